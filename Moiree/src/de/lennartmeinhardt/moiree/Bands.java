@@ -0,0 +1,93 @@
+package de.lennartmeinhardt.moiree;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Helper for processing images in bands of rows on the common {@link ForkJoinPool}.
+ * 
+ * @author Lennart Meinhardt
+ */
+public final class Bands {
+	
+	// number of pixels per band
+	private static final int BAND_PIXELS = 1 << 18;
+	
+	
+	/**
+	 * Get the number of rows per band for an image of given size.
+	 * 
+	 * @param width the image width
+	 * @param height the image height
+	 * @return number of rows per band
+	 */
+	static int getBandHeight(int width, int height) {
+		return Math.max(1, Math.min(height, BAND_PIXELS / width));
+	}
+	
+	/**
+	 * Fill bands of ARGB rows in parallel and hand them to a consumer in ascending order, from the calling thread.
+	 * One buffer per worker is allocated and reused for every round of bands.
+	 * 
+	 * @param width the image width
+	 * @param height the image height
+	 * @param filler the object filling the bands, called concurrently
+	 * @param consumer the object receiving the filled bands
+	 * @throws IOException if the consumer throws it
+	 */
+	static void fillInOrder(int width, int height, BandFiller filler, BandConsumer consumer) throws IOException {
+		int bandHeight = getBandHeight(width, height);
+		int bandCount = (height + bandHeight - 1) / bandHeight;
+		int[][] bands = new int[Math.min(bandCount, ForkJoinPool.getCommonPoolParallelism() + 1)][width * bandHeight];
+		for(int firstBand = 0; firstBand < bandCount; firstBand += bands.length) {
+			int roundBands = Math.min(bands.length, bandCount - firstBand);
+			int roundY = firstBand * bandHeight;
+			IntStream.range(0, roundBands).parallel().forEach(i -> {
+				int bandY = roundY + i * bandHeight;
+				filler.fill(bandY, Math.min(bandHeight, height - bandY), bands[i]);
+			});
+			for(int i = 0; i < roundBands; i++) {
+				int bandY = roundY + i * bandHeight;
+				consumer.accept(bandY, Math.min(bandHeight, height - bandY), bands[i]);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Fills a band of ARGB rows.
+	 */
+	@FunctionalInterface
+	static interface BandFiller {
+		/**
+		 * Fill a band of rows.
+		 * 
+		 * @param y the first row of the band
+		 * @param rows the number of rows
+		 * @param argbs the buffer to fill, row after row, with a scanline stride of the image width
+		 */
+		void fill(int y, int rows, int[] argbs);
+	}
+	
+	/**
+	 * Receives bands of ARGB rows.
+	 */
+	@FunctionalInterface
+	public static interface BandConsumer {
+		/**
+		 * Take a band of rows. The buffer is reused after returning.
+		 * 
+		 * @param y the first row of the band
+		 * @param rows the number of rows
+		 * @param argbs the band pixels, row after row, with a scanline stride of the image width
+		 * @throws IOException if writing the band fails
+		 */
+		void accept(int y, int rows, int[] argbs) throws IOException;
+	}
+	
+	
+	// no instances
+	private Bands() {
+	}
+}
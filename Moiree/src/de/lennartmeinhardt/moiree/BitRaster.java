@@ -0,0 +1,145 @@
+package de.lennartmeinhardt.moiree;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A two-valued image that stores one bit per pixel in a <code>long</code> array.
+ * A set bit is a foreground pixel, a cleared bit is a transparent pixel.
+ * Every row starts at a new word, so different rows can be written from different threads.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class BitRaster implements WritablePatternRaster {
+	
+	private final int width;
+	private final int height;
+	// number of words used by a single row
+	private final int wordsPerRow;
+	// the pixel bits, row by row. Pixel x of a row is bit x % 64 of the row's word x / 64
+	private final long[] words;
+	
+	
+	/**
+	 * Create a new, cleared {@link BitRaster} with given dimensions.
+	 * 
+	 * @param width the width in pixels
+	 * @param height the height in pixels
+	 */
+	public BitRaster(int width, int height) {
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid raster size " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = getWordsPerRow(width);
+		this.words = new long[Math.multiplyExact(wordsPerRow, height)];
+	}
+	
+	
+	/**
+	 * Get the number of words needed to store a row of given width.
+	 * 
+	 * @param width the row width
+	 * @return number of words per row
+	 */
+	public static int getWordsPerRow(int width) {
+		return (width + 63) >>> 6;
+	}
+	
+	@Override public int getWidth() {
+		return width;
+	}
+	@Override public int getHeight() {
+		return height;
+	}
+	public int getWordsPerRow() {
+		return wordsPerRow;
+	}
+	
+	@Override public boolean isSet(int x, int y) {
+		return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+	}
+	
+	@Override public void readRow(int y, long[] row) {
+		System.arraycopy(words, y * wordsPerRow, row, 0, wordsPerRow);
+	}
+	
+	/**
+	 * Replace a row's bits by the given ones.
+	 * 
+	 * @param y the row index
+	 * @param row array of at least {@link #getWordsPerRow()} words
+	 */
+	@Override public void writeRow(int y, long[] row) {
+		System.arraycopy(row, 0, words, y * wordsPerRow, wordsPerRow);
+	}
+	
+	@Override public void expandRow(int y, int x, int length, int[] argbs, int offset, int setArgb, int unsetArgb) {
+		int rowStart = y * wordsPerRow;
+		for(int i = 0; i < length; i++) {
+			int column = x + i;
+			boolean set = (words[rowStart + (column >>> 6)] & (1L << column)) != 0;
+			argbs[offset + i] = set ? setArgb : unsetArgb;
+		}
+	}
+	
+	@Override public void expandRow(int y, int x, int length, IntBuffer argbs, int offset, int setArgb, int unsetArgb) {
+		int rowStart = y * wordsPerRow;
+		for(int i = 0; i < length; i++) {
+			int column = x + i;
+			boolean set = (words[rowStart + (column >>> 6)] & (1L << column)) != 0;
+			argbs.put(offset + i, set ? setArgb : unsetArgb);
+		}
+	}
+	
+	@Override public long getByteSize() {
+		return (long) words.length * Long.BYTES;
+	}
+	
+	
+	/**
+	 * Set the bits of a run of pixels in a row array.
+	 * 
+	 * @param row the row words
+	 * @param fromX the first pixel to set
+	 * @param toX the pixel after the last one to set
+	 */
+	public static void setRun(long[] row, int fromX, int toX) {
+		if(fromX >= toX)
+			return;
+		int firstWord = fromX >>> 6;
+		int lastWord = (toX - 1) >>> 6;
+		long firstMask = -1L << fromX;
+		long lastMask = -1L >>> -toX;
+		if(firstWord == lastWord) {
+			row[firstWord] |= firstMask & lastMask;
+		} else {
+			row[firstWord] |= firstMask;
+			Arrays.fill(row, firstWord + 1, lastWord, -1L);
+			row[lastWord] |= lastMask;
+		}
+	}
+	
+	/**
+	 * Count the set bits of a run of pixels in a row array.
+	 * 
+	 * @param row the row words
+	 * @param fromX the first pixel to count
+	 * @param toX the pixel after the last one to count
+	 * @return the number of set pixels
+	 */
+	public static int countRun(long[] row, int fromX, int toX) {
+		if(fromX >= toX)
+			return 0;
+		int firstWord = fromX >>> 6;
+		int lastWord = (toX - 1) >>> 6;
+		long firstMask = -1L << fromX;
+		long lastMask = -1L >>> -toX;
+		if(firstWord == lastWord)
+			return Long.bitCount(row[firstWord] & firstMask & lastMask);
+		int count = Long.bitCount(row[firstWord] & firstMask) + Long.bitCount(row[lastWord] & lastMask);
+		for(int word = firstWord + 1; word < lastWord; word++)
+			count += Long.bitCount(row[word]);
+		return count;
+	}
+}
@@ -1,225 +1,512 @@
 package de.lennartmeinhardt.moiree;
 
-import java.util.Random;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
 
-import javafx.scene.Group;
-import javafx.scene.SnapshotParameters;
-import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
-import javafx.scene.paint.ImagePattern;
-import javafx.scene.shape.Polygon;
-import javafx.scene.shape.Rectangle;
 
 public class Drawing {
 	
-	private static final int ARGB_BLACK = 0xff << 24;
-	private static final int ARGB_TRANSPARENT = 0;
+	public static final int ARGB_BLACK = 0xff << 24;
+	public static final int ARGB_TRANSPARENT = 0;
+	// upper bound of the number of pixels of a preview image
+	public static final int PREVIEW_PIXELS = 1 << 20;
+	
+	// SplitMix64 increment, spreads the block indices over the seed space
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
 
 	
+	/**
+	 * Get the period of the checkerboard moir image in both directions.
+	 * 
+	 * @param settings the image settings
+	 * @return the period in pixels
+	 */
+	public static int getCheckerboardPeriod(ImageSettings settings) {
+		return 2 * settings.getPixelSize();
+	}
 	/**
 	 * Draw the checkerboard moir image with given pixel size.
 	 * 
-	 * @param image the image to write to
+	 * @param raster the raster to write to
 	 * @param size the pixel size
 	 */
-	public static void drawCheckerboardToImage(WritableImage image, int size) {
-		PixelWriter writer = image.getPixelWriter();
-		double width = image.getWidth();
-		double height = image.getHeight();
-		
-		int argb = 0;
-		for(int x = 0; x < width; x++) {
-			for(int y = 0; y < height; y++) {
-				if((x / size + y / size) % 2 == 0)
-					argb = ARGB_BLACK;
-				else
-					argb = ARGB_TRANSPARENT;
-				
-				writer.setArgb(x, y, argb);
-			}
-		}
+	public static void drawCheckerboardToRaster(WritablePatternRaster raster, int size) {
+		drawRowsToRaster(raster, (y, row, width) -> setAlternatingRuns(row, width, size, size, (y / size) % 2 == 0));
 	}
 	/**
 	 * Draw the checkerboard moir image with given image settings.
 	 * 
-	 * @param image the image to write to
+	 * @param raster the raster to write to
+	 * @param settings the image settings
+	 */
+	public static void drawCheckerboardToRaster(WritablePatternRaster raster, ImageSettings settings) {
+		drawCheckerboardToRaster(raster, settings.getPixelSize());
+	}
+	
+	/**
+	 * Get the vertical period of the horizontal lines moir image. Horizontally every pixel of a row is equal.
+	 * 
+	 * @param settings the image settings
+	 * @return the period in pixels
+	 */
+	public static int getHorizontalLinesPeriod(ImageSettings settings) {
+		return 2 * settings.getPixelSize();
+	}
+	/**
+	 * Create a sampler of the checkerboard moir image with given image settings.
+	 * 
 	 * @param settings the image settings
+	 * @return the sampler
 	 */
-	public static void drawCheckerboardToImage(WritableImage image, ImageSettings settings) {
-		drawCheckerboardToImage(image, settings.getPixelSize());
+	public static PatternSampler createCheckerboardSampler(ImageSettings settings) {
+		double size = settings.getPixelSize();
+		return (x, y) -> (((long) Math.floor(x / size) + (long) Math.floor(y / size)) & 1) == 0;
 	}
 	
 	/**
 	 * Draw the horizontal lines moir image with given pixel size.
 	 * 
-	 * @param image the image to write to
+	 * @param raster the raster to write to
 	 * @param size the pixel size
 	 */
-	public static void drawHorizontalLinesToImage(WritableImage image, int size) {
-		PixelWriter writer = image.getPixelWriter();
-		double width = image.getWidth();
-		double height = image.getHeight();
-		
-		int argb = 0;
-		for(int x = 0; x < width; x++) {
-			for(int y = 0; y < height; y++) {
-				if((y / size) % 2 == 0)
-					argb = ARGB_BLACK;
-				else
-					argb = ARGB_TRANSPARENT;
-				
-				writer.setArgb(x, y, argb);
-			}
-		}
+	public static void drawHorizontalLinesToRaster(WritablePatternRaster raster, int size) {
+		drawRowsToRaster(raster, (y, row, width) -> {
+			if((y / size) % 2 == 0)
+				BitRaster.setRun(row, 0, width);
+		});
 	}
 	/**
 	 * Draw the horizontal lines moir image with given image settings.
 	 * 
-	 * @param image the image to write to
+	 * @param raster the raster to write to
 	 * @param settings the image settings
 	 */
-	public static void drawHorizontalLinesToImage(WritableImage image, ImageSettings settings) {
-		drawHorizontalLinesToImage(image, settings.getPixelSize());
+	public static void drawHorizontalLinesToRaster(WritablePatternRaster raster, ImageSettings settings) {
+		drawHorizontalLinesToRaster(raster, settings.getPixelSize());
 	}
 
+	/**
+	 * Create a sampler of the horizontal lines moir image with given image settings.
+	 * 
+	 * @param settings the image settings
+	 * @return the sampler
+	 */
+	public static PatternSampler createHorizontalLinesSampler(ImageSettings settings) {
+		double size = settings.getPixelSize();
+		return (x, y) -> ((long) Math.floor(y / size) & 1) == 0;
+	}
+	
+	/**
+	 * Get the vertical period of the triangles moir image, two rows of triangles.
+	 * The horizontal period, the triangle width, is not a whole number of pixels, so triangles only repeat vertically.
+	 * 
+	 * @param settings the image settings
+	 * @return the period in pixels
+	 */
+	public static int getTrianglesPeriod(ImageSettings settings) {
+		return 4 * settings.getPixelSize();
+	}
 	/**
 	 * Draw the triangles moir image with given pixel size.
+	 * The image consists of rows of isosceles triangles pointing upwards, each row being shifted by half a triangle.
+	 * A pixel is set if its center lies inside a triangle.
 	 * 
-	 * @param image the image to write to
+	 * @param raster the raster to write to
 	 * @param size the pixel size
 	 */
-	public static void drawTrianglesToImage(WritableImage image, double size) {
-		double width = image.getWidth();
-		double height = image.getHeight();
-		
-		size *= 2;
-		
-		Polygon topLeftTriangle = createTriangle(0, 0, size);
-		Polygon topRightTriangle = createTriangle(1, 0, size);
-		Polygon bottomLeftTriangle = createTriangle(-.5, 1, size);
-		Polygon bottomCenterTriangle = createTriangle(.5, 1, size);
-		Polygon bottomRightTriangle = createTriangle(1.5, 1, size);
-
-		Group patternCell = new Group(topLeftTriangle, topRightTriangle, bottomLeftTriangle, bottomCenterTriangle, bottomRightTriangle);
-		Rectangle bounds2 = new Rectangle(2 * size * Math.sqrt(1.25), 2 * size);
-		patternCell.setClip(bounds2);
+	public static void drawTrianglesToRaster(WritablePatternRaster raster, double size) {
+		double triangleHeight = 2 * size;
+		double triangleWidth = triangleHeight * Math.sqrt(1.25);
 		
-		SnapshotParameters params = new SnapshotParameters();
-		params.setFill(Color.TRANSPARENT);
-		Image pattern = patternCell.snapshot(params, null);
-
-		ImagePattern imagePattern = new ImagePattern(pattern, 0, 0, size * 2 * Math.sqrt(1.25), size * 2, false);
-
-		Rectangle bounds = new Rectangle(width, height);
-		bounds.setFill(imagePattern);
-		bounds.snapshot(params, image);
+		drawRowsToRaster(raster, (y, row, width) -> {
+			double centerY = y + .5;
+			long triangleRow = (long) Math.floor(centerY / triangleHeight);
+			// half of the triangle width at the current height
+			double halfWidth = (centerY - triangleRow * triangleHeight) / triangleHeight * triangleWidth / 2;
+			double shift = triangleRow % 2 == 0 ? 0 : -triangleWidth / 2;
+			
+			for(double apexX = shift + triangleWidth / 2; apexX - halfWidth < width; apexX += triangleWidth) {
+				// pixels whose center lies in [apexX - halfWidth, apexX + halfWidth]
+				int fromX = Math.max(0, (int) Math.ceil(apexX - halfWidth - .5));
+				int toX = Math.min(width, (int) Math.floor(apexX + halfWidth - .5) + 1);
+				BitRaster.setRun(row, fromX, toX);
+			}
+		});
 	}
 	/**
 	 * Draw the triangles moir image with given image settings.
 	 * 
-	 * @param image the image to write to
+	 * @param raster the raster to write to
 	 * @param settings the image settings
 	 */
-	public static void drawTrianglesToImage(WritableImage image, ImageSettings settings) {
-		drawTrianglesToImage(image, settings.getPixelSize());
+	public static void drawTrianglesToRaster(WritablePatternRaster raster, ImageSettings settings) {
+		drawTrianglesToRaster(raster, settings.getPixelSize());
 	}
 	
 	/**
-	 * Create a isosceles triangle with given height and translations. Translations are given relatively.
-	 * Translation x is relative to triangle width, y is relative to triangle height.
+	 * Create a sampler of the triangles moir image with given image settings.
 	 * 
-	 * @param translateXrel the triangle's x translation, to be scaled by width
-	 * @param translateYrel the triangle's y translation, to be scaled by height
-	 * @param height the triangle height
-	 * @return triangle as {@link Polygon} object
+	 * @param settings the image settings
+	 * @return the sampler
 	 */
-	private static Polygon createTriangle(double translateXrel, double translateYrel, double height) {
-		double triangleSideLength = height * Math.sqrt(1.25);
-		Polygon triangle = new Polygon(triangleSideLength / 2, 0, 0, height, triangleSideLength, height);
-		triangle.setTranslateX(translateXrel * triangleSideLength);
-		triangle.setTranslateY(translateYrel * height);
-		triangle.setFill(Color.BLACK);
-		return triangle;
+	public static PatternSampler createTrianglesSampler(ImageSettings settings) {
+		double triangleHeight = 2 * settings.getPixelSize();
+		double triangleWidth = triangleHeight * Math.sqrt(1.25);
+		return (x, y) -> {
+			long triangleRow = (long) Math.floor(y / triangleHeight);
+			double halfWidth = (y - triangleRow * triangleHeight) / triangleHeight * triangleWidth / 2;
+			double shift = (triangleRow & 1) == 0 ? 0 : -triangleWidth / 2;
+			// distance to the apex of the nearest triangle
+			double localX = x - shift - triangleWidth / 2;
+			double apexDistance = Math.abs(localX - Math.rint(localX / triangleWidth) * triangleWidth);
+			return apexDistance <= halfWidth;
+		};
 	}
 	
 	/**
-	 * Draw the random moir image with given density and pixel size.
+	 * Draw the random moir image with given density, pixel size and seed.
+	 * Every block of pixel size x pixel size pixels gets its value from {@link #getBlockRandom(long, int, int)},
+	 * so equal seeds always result in equal images.
 	 * 
-	 * @param image the image to write to
+	 * @param raster the raster to write to
 	 * @param density the pixel density
 	 * @param size the pixel size
+	 * @param seed the random seed
 	 */
-	public static void drawRandomPixelsToImage(WritableImage image, double density, int size) {
-		PixelWriter writer = image.getPixelWriter();
-		PixelReader reader = image.getPixelReader();
-		double width = image.getWidth();
-		double height = image.getHeight();
-		
-		Random random = new Random();
-		int argb = 0;
-		for(int x = 0; x < width; x++) {
-			for(int y = 0; y < height; y++) {
-				int offsetX = x % size;
-				int offsetY = y % size;
-				if(offsetX == 0 && offsetY == 0) {
-					if(random.nextDouble() < density)
-						argb = ARGB_BLACK;
-					else
-						argb = ARGB_TRANSPARENT;
-				} else {
-					int tempX = x - offsetX;
-					int tempY = y - offsetY;
-					argb = reader.getArgb(tempX, tempY);
-				}
-				
-				writer.setArgb(x, y, argb);
+	public static void drawRandomPixelsToRaster(WritablePatternRaster raster, double density, int size, long seed) {
+		drawRowsToRaster(raster, (y, row, width) -> {
+			int blockY = y / size;
+			for(int blockX = 0, start = 0; start < width; blockX++, start += size) {
+				if(getBlockRandom(seed, blockX, blockY) < density)
+					BitRaster.setRun(row, start, Math.min(start + size, width));
 			}
-		}
+		});
 	}
 	/**
 	 * Draw the random moir image with given image settings.
 	 * 
-	 * @param image the image to write to
+	 * @param raster the raster to write to
 	 * @param settings the image settings
 	 */
-	public static void drawRandomPixelsToImage(WritableImage image, ImageSettings settings) {
-		drawRandomPixelsToImage(image, settings.getPixelDensity() / 100, settings.getPixelSize());
+	public static void drawRandomPixelsToRaster(WritablePatternRaster raster, ImageSettings settings) {
+		drawRandomPixelsToRaster(raster, settings.getPixelDensity() / 100, settings.getPixelSize(), settings.getRandomSeed());
 	}
 	
+	/**
+	 * Create a sampler of the random moir image with given image settings.
+	 * 
+	 * @param settings the image settings
+	 * @return the sampler
+	 */
+	public static PatternSampler createRandomPixelsSampler(ImageSettings settings) {
+		double density = settings.getPixelDensity() / 100;
+		double size = settings.getPixelSize();
+		long seed = settings.getRandomSeed();
+		return (x, y) -> getBlockRandom(seed, (int) Math.floor(x / size), (int) Math.floor(y / size)) < density;
+	}
+	
+	/**
+	 * Get the random value of a pixel block. The value only depends on the arguments, so blocks can be computed
+	 * in any order and on any thread. This is the SplitMix64 output for the block's index.
+	 * 
+	 * @param seed the random seed
+	 * @param blockX the block column
+	 * @param blockY the block row
+	 * @return uniformly distributed value between 0 (inclusive) and 1 (exclusive)
+	 */
+	static double getBlockRandom(long seed, int blockX, int blockY) {
+		long index = ((long) blockY << 32) | (blockX & 0xffffffffL);
+		long z = seed + (index + 1) * GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		z = z ^ (z >>> 31);
+		return (z >>> 11) * 0x1.0p-53;
+	}
+	
+	/**
+	 * Get the period of the diagonal lines moir image in both directions.
+	 * 
+	 * @param settings the image settings
+	 * @return the period in pixels
+	 */
+	public static int getDiagonalLinesPeriod(ImageSettings settings) {
+		return 2 * settings.getPixelSize();
+	}
 	/**
 	 * Draw the diagonal lines moir image with given pixel size.
 	 * 
-	 * @param image the image to write to
+	 * @param raster the raster to write to
 	 * @param size the pixel size
 	 */
-	public static void drawDiagonalLinesToImage(WritableImage image, int size) {
+	public static void drawDiagonalLinesToRaster(WritablePatternRaster raster, int size) {
+		// the line at x = 0 is already y % size pixels wide
+		drawRowsToRaster(raster, (y, row, width) -> setAlternatingRuns(row, width, size - y % size, size, (y / size) % 2 == 0));
+	}
+	/**
+	 * Draw the diagonal lines moir image with given image settings.
+	 * 
+	 * @param raster the raster to write to
+	 * @param settings the image settings
+	 */
+	public static void drawDiagonalLinesToRaster(WritablePatternRaster raster, ImageSettings settings) {
+		drawDiagonalLinesToRaster(raster, settings.getPixelSize());
+	}
+	/**
+	 * Create a sampler of the diagonal lines moir image with given image settings.
+	 * Pixel (x, y) belongs to the diagonal x + y, which is x + y + 1 at the pixel's center.
+	 * 
+	 * @param settings the image settings
+	 * @return the sampler
+	 */
+	public static PatternSampler createDiagonalLinesSampler(ImageSettings settings) {
+		double size = settings.getPixelSize();
+		return (x, y) -> ((long) Math.floor((x + y - 1) / size) & 1) == 0;
+	}
+	
+	
+	/**
+	 * Draw a raster row by row, in parallel. The raster is split into bands of rows that are drawn
+	 * on the common {@link ForkJoinPool}. The drawer must not depend on the order rows are drawn in.
+	 * Drawing stops when the calling thread is interrupted, which is checked before each band.
+	 * 
+	 * @param raster the raster to write to
+	 * @param drawer the drawer filling single rows
+	 * @throws CancellationException if the calling thread was interrupted
+	 */
+	static void drawRowsToRaster(WritablePatternRaster raster, RowDrawer drawer) throws CancellationException {
+		int width = raster.getWidth();
+		int height = raster.getHeight();
+		int bandHeight = Bands.getBandHeight(width, height);
+		// the bands are drawn by workers of the pool, which do not see the caller's interrupt
+		Thread caller = Thread.currentThread();
+		
+		IntStream.range(0, (height + bandHeight - 1) / bandHeight).parallel().forEach(band -> {
+			if(caller.isInterrupted())
+				throw new CancellationException("Interrupted while drawing");
+			long[] row = new long[BitRaster.getWordsPerRow(width)];
+			int bandEnd = Math.min(height, (band + 1) * bandHeight);
+			for(int y = band * bandHeight; y < bandEnd; y++) {
+				Arrays.fill(row, 0);
+				drawer.drawRow(y, row, width);
+				raster.writeRow(y, row);
+			}
+		});
+	}
+	
+	/**
+	 * Convert a color to a non-premultiplied ARGB value.
+	 * 
+	 * @param color the color to convert
+	 * @return the ARGB value
+	 */
+	public static int toArgb(Color color) {
+		return (int) Math.round(color.getOpacity() * 255) << 24
+				| (int) Math.round(color.getRed() * 255) << 16
+				| (int) Math.round(color.getGreen() * 255) << 8
+				| (int) Math.round(color.getBlue() * 255);
+	}
+	
+	/**
+	 * Convert a non-premultiplied ARGB value to a premultiplied one, as used by {@link #createPixelBuffer(int, int)}.
+	 * 
+	 * @param argb the non-premultiplied value
+	 * @return the premultiplied value
+	 */
+	public static int premultiply(int argb) {
+		int alpha = argb >>> 24;
+		if(alpha == 0xff)
+			return argb;
+		if(alpha == 0)
+			return ARGB_TRANSPARENT;
+		int red = (((argb >> 16) & 0xff) * alpha + 127) / 255;
+		int green = (((argb >> 8) & 0xff) * alpha + 127) / 255;
+		int blue = ((argb & 0xff) * alpha + 127) / 255;
+		return alpha << 24 | red << 16 | green << 8 | blue;
+	}
+	
+	/**
+	 * Create a pixel buffer of premultiplied ARGB values in off-heap memory. An image created from it shares the buffer,
+	 * so pixels written to the buffer are shown without being copied. Changes must be published with
+	 * {@link PixelBuffer#updateBuffer(javafx.util.Callback)} on the FX thread once the image is shown.
+	 * 
+	 * @param width the width in pixels
+	 * @param height the height in pixels
+	 * @return a transparent pixel buffer
+	 */
+	public static PixelBuffer<IntBuffer> createPixelBuffer(int width, int height) {
+		IntBuffer buffer = ByteBuffer.allocateDirect(Math.multiplyExact(Math.multiplyExact(width, height), Integer.BYTES))
+				.order(ByteOrder.nativeOrder()).asIntBuffer();
+		return new PixelBuffer<>(width, height, buffer, PixelFormat.getIntArgbPreInstance());
+	}
+	
+	/**
+	 * Expand a raster to black and transparent ARGB values and write them to an image.
+	 * 
+	 * @param raster the raster to read from
+	 * @param image the image to write to, of the raster's size
+	 */
+	public static void writeRasterToImage(PatternRaster raster, WritableImage image) {
+		writeRasterToImage(raster, image, ARGB_BLACK, ARGB_TRANSPARENT);
+	}
+	
+	/**
+	 * Expand a raster to ARGB values and write them to an image. The image is split into bands
+	 * that are expanded in parallel on the common {@link ForkJoinPool}. Each expanded band is pushed to the image with a single
+	 * {@link PixelWriter#setPixels(int, int, int, int, PixelFormat, int[], int, int)} call from the calling thread.
+	 * 
+	 * @param raster the raster to read from
+	 * @param image the image to write to, of the raster's size
+	 * @param setArgb the color of set pixels
+	 * @param unsetArgb the color of cleared pixels
+	 */
+	public static void writeRasterToImage(PatternRaster raster, WritableImage image, int setArgb, int unsetArgb) {
+		writeRasterToImage(raster, image, setArgb, unsetArgb, () -> false);
+	}
+	
+	/**
+	 * Expand a raster to ARGB values and write them to an image, like {@link #writeRasterToImage(PatternRaster, WritableImage, int, int)}.
+	 * Cancellation is checked before each band is written.
+	 * 
+	 * @param raster the raster to read from
+	 * @param image the image to write to, of the raster's size
+	 * @param setArgb the color of set pixels
+	 * @param unsetArgb the color of cleared pixels
+	 * @param cancelled tells whether to stop writing
+	 * @throws CancellationException if writing was cancelled
+	 */
+	public static void writeRasterToImage(PatternRaster raster, WritableImage image, int setArgb, int unsetArgb, BooleanSupplier cancelled)
+			throws CancellationException {
 		PixelWriter writer = image.getPixelWriter();
-		double width = image.getWidth();
-		double height = image.getHeight();
+		PixelFormat<IntBuffer> format = PixelFormat.getIntArgbInstance();
+		int width = raster.getWidth();
+		int height = raster.getHeight();
 		
-		int argb = 0;
-		for(int x = 0; x < width; x++) {
-			for(int y = 0; y < height; y++) {
-				if(((x + y) / size) % 2 == 0)
-					argb = ARGB_BLACK;
-				else
-					argb = ARGB_TRANSPARENT;
-				
-				writer.setArgb(x, y, argb);
+		try {
+			Bands.fillInOrder(width, height, (y, rows, argbs) -> {
+				for(int row = 0; row < rows; row++)
+					raster.expandRow(y + row, 0, width, argbs, row * width, setArgb, unsetArgb);
+			}, (y, rows, argbs) -> {
+				if(cancelled.getAsBoolean())
+					throw new CancellationException();
+				writer.setPixels(0, y, width, rows, format, argbs, 0, width);
+			});
+		} catch(IOException e) {
+			// not thrown by the pixel writer
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Get the downsampling factor of the preview of an image of given size, the smallest power of two
+	 * that keeps the preview within {@link #PREVIEW_PIXELS} pixels.
+	 * 
+	 * @param width the image width
+	 * @param height the image height
+	 * @return the factor, 1 if the image is small enough to be shown without a preview
+	 */
+	public static int getPreviewFactor(int width, int height) {
+		int factor = 1;
+		while((long) ((width + factor - 1) / factor) * ((height + factor - 1) / factor) > PREVIEW_PIXELS)
+			factor *= 2;
+		return factor;
+	}
+	
+	/**
+	 * Create a reduced resolution preview of a raster. Every preview pixel covers a block of factor x factor raster pixels
+	 * and has the set color, with its opacity scaled by the fraction of set pixels in the block. This is the box filtered image
+	 * of set pixels over transparent ones. Blocks at the right and bottom border may be smaller.
+	 * Preview rows are computed in parallel on the common {@link ForkJoinPool}, directly into the off-heap
+	 * buffer of the image, see {@link #createPixelBuffer(int, int)}.
+	 * 
+	 * @param raster the raster to read from
+	 * @param factor the number of raster pixels per preview pixel in each direction
+	 * @param setArgb the color of set pixels
+	 * @param cancelled tells whether to stop
+	 * @return the preview image
+	 * @throws CancellationException if creating the preview was cancelled
+	 */
+	public static WritableImage createPreviewImage(PatternRaster raster, int factor, int setArgb, BooleanSupplier cancelled)
+			throws CancellationException {
+		int width = raster.getWidth();
+		int height = raster.getHeight();
+		int previewWidth = (width + factor - 1) / factor;
+		int previewHeight = (height + factor - 1) / factor;
+		int setAlpha = setArgb >>> 24;
+		PixelBuffer<IntBuffer> pixels = createPixelBuffer(previewWidth, previewHeight);
+		IntBuffer argbs = pixels.getBuffer();
+		
+		IntStream.range(0, previewHeight).parallel().forEach(previewY -> {
+			if(cancelled.getAsBoolean())
+				throw new CancellationException();
+			long[] row = new long[BitRaster.getWordsPerRow(width)];
+			int[] counts = new int[previewWidth];
+			int fromY = previewY * factor;
+			int toY = Math.min(height, fromY + factor);
+			for(int y = fromY; y < toY; y++) {
+				raster.readRow(y, row);
+				for(int previewX = 0; previewX < previewWidth; previewX++)
+					counts[previewX] += BitRaster.countRun(row, previewX * factor, Math.min(width, (previewX + 1) * factor));
+			}
+			for(int previewX = 0; previewX < previewWidth; previewX++) {
+				int blockPixels = (Math.min(width, (previewX + 1) * factor) - previewX * factor) * (toY - fromY);
+				int alpha = (setAlpha * counts[previewX] + blockPixels / 2) / blockPixels;
+				argbs.put(previewY * previewWidth + previewX, premultiply(alpha << 24 | setArgb & 0xffffff));
 			}
+		});
+		
+		return new WritableImage(pixels);
+	}
+	
+	/**
+	 * Set the pixels of every other run in a row. Runs alternate between set and cleared pixels.
+	 * 
+	 * @param row the row words
+	 * @param width the row width
+	 * @param firstRunLength the length of the first run, may be shorter than the others
+	 * @param runLength the length of all following runs
+	 * @param firstRunSet whether the first run is set
+	 */
+	private static void setAlternatingRuns(long[] row, int width, int firstRunLength, int runLength, boolean firstRunSet) {
+		boolean set = firstRunSet;
+		int x = 0;
+		int end = Math.min(firstRunLength, width);
+		while(x < width) {
+			if(set)
+				BitRaster.setRun(row, x, end);
+			set = ! set;
+			x = end;
+			end = Math.min(x + runLength, width);
 		}
 	}
+	
+	
 	/**
-	 * Draw the diagonal lines moir image with given image settings.
+	 * An object that draws single rows of a {@link WritablePatternRaster}.
 	 * 
-	 * @param image the image to write to
-	 * @param settings the image settings
+	 * @author Lennart Meinhardt
 	 */
-	public static void drawDiagonalLinesToImage(WritableImage image, ImageSettings settings) {
-		drawDiagonalLinesToImage(image, settings.getPixelSize());
+	@FunctionalInterface
+	static interface RowDrawer {
+		/**
+		 * Draw the row of given index by setting the bits of foreground pixels.
+		 * 
+		 * @param y the row index
+		 * @param row the cleared row words to write to
+		 * @param width the row width
+		 */
+		void drawRow(int y, long[] row, int width);
 	}
 	
 
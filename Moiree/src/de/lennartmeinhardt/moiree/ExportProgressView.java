@@ -0,0 +1,45 @@
+package de.lennartmeinhardt.moiree;
+
+import java.util.ResourceBundle;
+
+import javafx.concurrent.Task;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+/**
+ * Shows the title, stage and progress of an export task together with a button to cancel it.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class ExportProgressView extends VBox {
+	
+	/**
+	 * Create a new {@link ExportProgressView} for given task.
+	 * 
+	 * @param task the task to show
+	 * @param resources the localization
+	 */
+	public ExportProgressView(Task<?> task, ResourceBundle resources) {
+		super(2);
+		
+		Label titleLabel = new Label();
+		titleLabel.textProperty().bind(task.titleProperty().concat(": ").concat(task.messageProperty()));
+		
+		ProgressBar progressBar = new ProgressBar();
+		progressBar.progressProperty().bind(task.progressProperty());
+		progressBar.setMaxWidth(Double.MAX_VALUE);
+		HBox.setHgrow(progressBar, Priority.ALWAYS);
+		
+		Button cancelButton = new Button(resources.getString("cancelExport"));
+		cancelButton.setOnAction(ev -> task.cancel());
+		
+		HBox progressBox = new HBox(10, progressBar, cancelButton);
+		progressBox.setAlignment(Pos.CENTER);
+		getChildren().addAll(titleLabel, progressBox);
+	}
+}
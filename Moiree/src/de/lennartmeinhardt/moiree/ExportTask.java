@@ -0,0 +1,59 @@
+package de.lennartmeinhardt.moiree;
+
+import java.nio.file.Path;
+import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+
+import javafx.concurrent.Task;
+
+/**
+ * Background task that encodes an image to a PNG file. The image is converted, encoded and written band by band,
+ * progress is reported per band. A cancelled or failed export deletes its partially written file.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class ExportTask extends Task<Path> {
+	
+	private final ScanlineSource source;
+	private final Path file;
+	private final PngOptions options;
+	private final ResourceBundle bundle;
+	
+	
+	/**
+	 * Create a new {@link ExportTask}.
+	 * 
+	 * @param source the image to export
+	 * @param file the file to write to
+	 * @param options the PNG encoding options
+	 * @param bundle the localization for progress messages
+	 */
+	public ExportTask(ScanlineSource source, Path file, PngOptions options, ResourceBundle bundle) {
+		this.source = source;
+		this.file = file;
+		this.options = options;
+		this.bundle = bundle;
+		updateTitle(file.getFileName().toString());
+		updateMessage(bundle.getString("exportQueued"));
+	}
+	
+	
+	public Path getFile() {
+		return file;
+	}
+	
+	@Override protected Path call() throws Exception {
+		updateMessage(bundle.getString("exportAnalyzing"));
+		int[] palette = options.getPalette(source);
+		updateMessage(bundle.getString("exportEncoding"));
+		SavingHelper.writePng(source, file, palette, options, (rowsWritten, height) -> {
+			if(isCancelled())
+				throw new CancellationException();
+			updateProgress(rowsWritten, height);
+			if(rowsWritten == height)
+				updateMessage(bundle.getString("exportFinishing"));
+		});
+		updateMessage(bundle.getString("exportDone"));
+		return file;
+	}
+}
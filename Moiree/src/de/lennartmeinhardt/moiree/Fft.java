@@ -0,0 +1,117 @@
+package de.lennartmeinhardt.moiree;
+
+/**
+ * Forward fast Fourier transform of a fixed power of two size, computed in place by the iterative radix-2 algorithm.
+ * <p>
+ * The bit reversal permutation and the twiddle factors are computed once. Transforms allocate nothing,
+ * so one instance can be shared by any number of threads.
+ * 
+ * @author Lennart Meinhardt
+ */
+public final class Fft {
+	
+	private final int size;
+	// index of each element after the bit reversal permutation
+	private final int[] reversed;
+	// cos and sin of 2 pi k / size for k < size / 2
+	private final double[] cos;
+	private final double[] sin;
+	
+	
+	/**
+	 * Create a new {@link Fft}.
+	 * 
+	 * @param size the number of elements, a power of two
+	 * @throws IllegalArgumentException if the size is not a positive power of two
+	 */
+	public Fft(int size) throws IllegalArgumentException {
+		if(size <= 0 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("Size is not a power of two: " + size);
+		this.size = size;
+		
+		int bits = Integer.numberOfTrailingZeros(size);
+		reversed = new int[size];
+		for(int i = 0; i < size; i++)
+			reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+		
+		cos = new double[Math.max(1, size / 2)];
+		sin = new double[cos.length];
+		for(int k = 0; k < cos.length; k++) {
+			double angle = 2 * Math.PI * k / size;
+			cos[k] = Math.cos(angle);
+			sin[k] = Math.sin(angle);
+		}
+	}
+	
+	
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * Transform a complex sequence in place. The result is not normalized.
+	 * 
+	 * @param re the real parts
+	 * @param im the imaginary parts
+	 * @param offset the index of the first element in both arrays
+	 */
+	public void transform(double[] re, double[] im, int offset) {
+		for(int i = 0; i < size; i++) {
+			int j = reversed[i];
+			if(j > i) {
+				double swap = re[offset + i];
+				re[offset + i] = re[offset + j];
+				re[offset + j] = swap;
+				swap = im[offset + i];
+				im[offset + i] = im[offset + j];
+				im[offset + j] = swap;
+			}
+		}
+		
+		for(int half = 1; half < size; half <<= 1) {
+			int twiddleStep = size / (2 * half);
+			for(int start = offset; start < offset + size; start += 2 * half) {
+				for(int k = 0; k < half; k++) {
+					double c = cos[k * twiddleStep];
+					double s = sin[k * twiddleStep];
+					int a = start + k;
+					int b = a + half;
+					// multiply by exp(-2 pi i k / (2 half))
+					double tr = re[b] * c + im[b] * s;
+					double ti = im[b] * c - re[b] * s;
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Transform a square complex array of size by size elements in place, rows first, then columns.
+	 * The result is not normalized.
+	 * 
+	 * @param re the real parts, row after row
+	 * @param im the imaginary parts, row after row
+	 * @param columnRe scratch space of at least size elements
+	 * @param columnIm scratch space of at least size elements
+	 */
+	public void transform2d(double[] re, double[] im, double[] columnRe, double[] columnIm) {
+		for(int row = 0; row < size; row++)
+			transform(re, im, row * size);
+		
+		// columns are copied out, strided access would thrash the cache
+		for(int column = 0; column < size; column++) {
+			for(int row = 0, index = column; row < size; row++, index += size) {
+				columnRe[row] = re[index];
+				columnIm[row] = im[index];
+			}
+			transform(columnRe, columnIm, 0);
+			for(int row = 0, index = column; row < size; row++, index += size) {
+				re[index] = columnRe[row];
+				im[index] = columnIm[row];
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package de.lennartmeinhardt.moiree;
+
+import java.nio.file.Path;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the expensive steps of the application. A recording started with
+ * <code>-XX:StartFlightRecording</code> shows them in the category Moiree, next to the allocations and
+ * garbage collections they cause. Like every event they carry their thread, start time and duration.
+ * <p>
+ * Events cost almost nothing while no recording is running.
+ * 
+ * @author Lennart Meinhardt
+ */
+public final class FlightRecorderEvents {
+	
+	private static final String CATEGORY = "Moiree";
+	
+	
+	private FlightRecorderEvents() {}
+	
+	
+	/**
+	 * Drawing of a pattern raster.
+	 */
+	@Name("de.lennartmeinhardt.moiree.PatternGeneration")
+	@Label("Pattern Generation")
+	@Description("Drawing of a pattern raster")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static final class PatternGenerationEvent extends Event {
+		@Label("Mode") public String mode;
+		@Label("Width") public int width;
+		@Label("Height") public int height;
+		@Label("Pixel Size") public int pixelSize;
+		// the drawn part of periodic patterns
+		@Label("Tile Width") public int tileWidth;
+		@Label("Tile Height") public int tileHeight;
+		@Label("Raster Size") @DataAmount public long rasterBytes;
+		@Label("Mapped") @Description("The tile is held in a pattern file, drawn or reused from an earlier session") public boolean mapped;
+	}
+	
+	/**
+	 * Background recalculation of a pattern and its preview image.
+	 */
+	@Name("de.lennartmeinhardt.moiree.Recalculation")
+	@Label("Image Recalculation")
+	@Description("Creation of a pattern and its preview image, generating the pattern unless it is cached")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static final class RecalculationEvent extends Event {
+		@Label("Mode") public String mode;
+		@Label("Width") public int width;
+		@Label("Height") public int height;
+		@Label("Pixel Size") public int pixelSize;
+		@Label("Cache Hit") @Description("The pattern was cached and only its preview was created") public boolean cacheHit;
+		@Label("Cancelled") public boolean cancelled;
+		@Label("Preview Size") @Description("Zero if the image is shown without a preview") @DataAmount public long imageBytes;
+	}
+	
+	/**
+	 * Refinement of the displayed image to full resolution, tile by tile on the FX thread.
+	 */
+	@Name("de.lennartmeinhardt.moiree.Refinement")
+	@Label("Refinement")
+	@Description("Expansion of a pattern to its full resolution image, spread over several pulses")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static final class RefinementEvent extends Event {
+		@Label("Width") public int width;
+		@Label("Height") public int height;
+		@Label("Tiles") public int tiles;
+		@Label("Pulses") @Description("The number of pulses the tiles were expanded in") public int pulses;
+		@Label("Expansion Time") @Description("The time spent expanding tiles, without the time between pulses") @Timespan public long expansionNanos;
+		@Label("Image Size") @DataAmount public long imageBytes;
+	}
+	
+	/**
+	 * Export of an image or a transformation sweep to PNG files.
+	 */
+	@Name("de.lennartmeinhardt.moiree.Export")
+	@Label("Export")
+	@Description("Encoding and writing of PNG files")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static final class ExportEvent extends Event {
+		@Label("File") public String file;
+		@Label("Format") public String format;
+		@Label("Width") public int width;
+		@Label("Height") public int height;
+		@Label("Frames") public int frames;
+		@Label("Bytes Written") @DataAmount public long bytesWritten;
+		
+		/**
+		 * End the event and commit it with the data of the export, if it is recorded.
+		 * 
+		 * @param target the written file, or the directory of a PNG sequence
+		 * @param format the name of the file format
+		 * @param width the image width
+		 * @param height the image height
+		 * @param frames the number of written images
+		 * @param bytesWritten the size of the written files
+		 */
+		public void commitExport(Path target, String format, int width, int height, int frames, long bytesWritten) {
+			end();
+			if(shouldCommit()) {
+				this.file = target.toString();
+				this.format = format;
+				this.width = width;
+				this.height = height;
+				this.frames = frames;
+				this.bytesWritten = bytesWritten;
+				commit();
+			}
+		}
+	}
+}
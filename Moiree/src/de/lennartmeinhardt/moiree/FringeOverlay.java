@@ -0,0 +1,63 @@
+package de.lennartmeinhardt.moiree;
+
+import java.util.List;
+
+import de.lennartmeinhardt.moiree.FringePredictor.PredictedFringe;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+
+/**
+ * Draws fringe vectors as double arrows around a common center. Each arrow points across its fringes
+ * and is one fringe period long, so it spans exactly one bright and one dark fringe.
+ * <p>
+ * The arrows are symmetric to the center, so the overlay is centered like the image below it when placed in a {@link javafx.scene.layout.StackPane}.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class FringeOverlay extends Path {
+	
+	// longer arrows are cut, fringes of nearly aligned layers may be far apart
+	private static final double MAX_ARROW_LENGTH = 4000;
+	private static final double HEAD_LENGTH = 10;
+	// angle between shaft and head lines
+	private static final double HEAD_ANGLE = Math.toRadians(25);
+	
+	
+	public FringeOverlay() {
+		getStyleClass().add("fringe-overlay");
+	}
+	
+	
+	/**
+	 * Replace the drawn fringes.
+	 * 
+	 * @param fringes the fringes to draw
+	 */
+	public void setFringes(List<PredictedFringe> fringes) {
+		getElements().clear();
+		for(PredictedFringe fringe : fringes) {
+			double halfLength = Math.min(MAX_ARROW_LENGTH, fringe.getPeriod()) / 2;
+			double directionX = fringe.getFrequencyX() / fringe.getFrequency();
+			double directionY = fringe.getFrequencyY() / fringe.getFrequency();
+			double endX = directionX * halfLength;
+			double endY = directionY * halfLength;
+			getElements().addAll(new MoveTo(-endX, -endY), new LineTo(endX, endY));
+			addHead(endX, endY, directionX, directionY);
+			addHead(-endX, -endY, -directionX, -directionY);
+		}
+	}
+	
+	private void addHead(double tipX, double tipY, double directionX, double directionY) {
+		double cos = Math.cos(HEAD_ANGLE);
+		double sin = Math.sin(HEAD_ANGLE);
+		// the head lines are the reversed direction rotated by plus and minus the head angle
+		PathElement[] head = {
+				new MoveTo(tipX - HEAD_LENGTH * (directionX * cos - directionY * sin), tipY - HEAD_LENGTH * (directionY * cos + directionX * sin)),
+				new LineTo(tipX, tipY),
+				new LineTo(tipX - HEAD_LENGTH * (directionX * cos + directionY * sin), tipY - HEAD_LENGTH * (directionY * cos - directionX * sin))
+		};
+		getElements().addAll(head);
+	}
+}
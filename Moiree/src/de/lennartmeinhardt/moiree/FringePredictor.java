@@ -0,0 +1,201 @@
+package de.lennartmeinhardt.moiree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Predicts the fringes of a Moir image of two periodic gratings in closed form, without rendering it.
+ * <p>
+ * A grating of wave vector <code>k</code> (in cycles per pixel) becomes <code>M^-T k</code> when its layer
+ * is transformed by the linear part <code>M</code> of the upper transformation. The upper and lower waves beat,
+ * and their difference vectors are the fringes. Vectors not shorter than the gratings' own are the gratings
+ * rather than fringes and are left out. Only the fundamental waves are considered, so the fringes of harmonics,
+ * which the spectrum may show as weaker peaks, are not predicted. The translation does not change the fringes' period
+ * and angle, only their position.
+ * 
+ * @author Lennart Meinhardt
+ */
+public final class FringePredictor {
+	
+	// wave vectors shorter than this are taken as the aligned state without fringes
+	private static final double MIN_FREQUENCY = 1e-9;
+	
+	
+	private FringePredictor() {}
+	
+	
+	/**
+	 * Check if the fringes of an image mode can be predicted.
+	 * 
+	 * @param mode the image mode
+	 * @return true if the mode is a periodic grating of known fundamental waves
+	 */
+	public static boolean isPredictable(MoireeImageMode mode) {
+		return getFundamentals(mode, 1) != null;
+	}
+	
+	/**
+	 * Predict the fringes of an image.
+	 * 
+	 * @param mode the image mode
+	 * @param pixelSize the pattern pixel size
+	 * @param transform the transformation of the upper layer
+	 * @return the fringes, longest period first. The list is empty if the mode is not predictable, if the layers are aligned,
+	 * or if all beats are finer than the gratings, see {@link #isAligned(MoireeImageMode, int, MoireeTransform)}.
+	 */
+	public static List<PredictedFringe> predict(MoireeImageMode mode, int pixelSize, MoireeTransform transform) {
+		double[][] fundamentals = getFundamentals(mode, pixelSize);
+		double[][] upperWaves = getUpperWaves(fundamentals, transform);
+		if(upperWaves == null)
+			return Collections.emptyList();
+		
+		double maxFrequency = Double.POSITIVE_INFINITY;
+		for(double[] k : fundamentals)
+			maxFrequency = Math.min(maxFrequency, Math.hypot(k[0], k[1]));
+		
+		List<PredictedFringe> fringes = new ArrayList<>();
+		for(double[] upper : upperWaves) {
+			// each upper wave beats with every lower wave, of either sign
+			for(double[] lower : fundamentals) {
+				for(int sign = -1; sign <= 1; sign += 2) {
+					double frequencyX = upper[0] - sign * lower[0];
+					double frequencyY = upper[1] - sign * lower[1];
+					double frequency = Math.hypot(frequencyX, frequencyY);
+					if(frequency > MIN_FREQUENCY && frequency < maxFrequency)
+						fringes.add(new PredictedFringe(frequencyX, frequencyY));
+				}
+			}
+		}
+		fringes.sort(Comparator.comparingDouble(PredictedFringe::getFrequency));
+		return fringes;
+	}
+	
+	/**
+	 * Check if the gratings of both layers coincide, so that the image has no fringes at all. Without fringes
+	 * and without alignment, the beats of the layers are finer than the gratings, for example for lines rotated
+	 * by more than 60 degrees.
+	 * 
+	 * @param mode the image mode
+	 * @param pixelSize the pattern pixel size
+	 * @param transform the transformation of the upper layer
+	 * @return true if every wave of the upper layer is a wave of the lower layer, false else or if the mode is not predictable
+	 */
+	public static boolean isAligned(MoireeImageMode mode, int pixelSize, MoireeTransform transform) {
+		double[][] fundamentals = getFundamentals(mode, pixelSize);
+		double[][] upperWaves = getUpperWaves(fundamentals, transform);
+		if(upperWaves == null)
+			return false;
+		
+		for(double[] upper : upperWaves) {
+			boolean matched = false;
+			for(double[] lower : fundamentals)
+				for(int sign = -1; sign <= 1; sign += 2)
+					matched |= Math.hypot(upper[0] - sign * lower[0], upper[1] - sign * lower[1]) <= MIN_FREQUENCY;
+			if(! matched)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the wave vectors of the upper layer's fundamental waves. They are transformed by the transposed inverse
+	 * of the linear part of the transformation.
+	 * 
+	 * @param fundamentals the wave vectors of the untransformed grating, or null
+	 * @param transform the transformation of the upper layer
+	 * @return the transformed wave vectors, or null if there are no fundamentals or the transformation is not invertible
+	 */
+	private static double[][] getUpperWaves(double[][] fundamentals, MoireeTransform transform) {
+		if(fundamentals == null)
+			return null;
+		double[] inverse;
+		try {
+			inverse = transform.getInverseMatrix(0, 0);
+		} catch(IllegalStateException e) {
+			return null;
+		}
+		
+		double[][] upperWaves = new double[fundamentals.length][];
+		for(int i = 0; i < fundamentals.length; i++) {
+			double[] k = fundamentals[i];
+			upperWaves[i] = new double[] {inverse[0] * k[0] + inverse[3] * k[1], inverse[1] * k[0] + inverse[4] * k[1]};
+		}
+		return upperWaves;
+	}
+	
+	/**
+	 * Get the wave vectors of the fundamental waves of a grating, one of each pair of opposite vectors.
+	 * 
+	 * @param mode the image mode
+	 * @param pixelSize the pattern pixel size
+	 * @return the wave vectors as <code>{kx, ky}</code> in cycles per pixel, or null if the mode is not supported
+	 */
+	private static double[][] getFundamentals(MoireeImageMode mode, int pixelSize) {
+		double k = 1. / (2 * pixelSize);
+		switch(mode) {
+		case HORIZONTAL_LINES:
+			return new double[][] {{0, k}};
+		case DIAGONAL_LINES:
+			return new double[][] {{k, k}};
+		// the checkerboard is the product of square waves in x and y, its fundamentals are the diagonal sum and difference
+		case SQUARES:
+			return new double[][] {{k, k}, {k, -k}};
+		default:
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * A predicted fringe, given by its wave vector.
+	 */
+	public static final class PredictedFringe {
+		
+		private final double frequencyX;
+		private final double frequencyY;
+		
+		
+		private PredictedFringe(double frequencyX, double frequencyY) {
+			this.frequencyX = frequencyX;
+			this.frequencyY = frequencyY;
+		}
+		
+		
+		public double getFrequencyX() {
+			return frequencyX;
+		}
+		public double getFrequencyY() {
+			return frequencyY;
+		}
+		/**
+		 * Get the spatial frequency in cycles per pixel.
+		 * 
+		 * @return the frequency
+		 */
+		public double getFrequency() {
+			return Math.hypot(frequencyX, frequencyY);
+		}
+		/**
+		 * Get the distance of neighboring fringes in pixels, measured across the fringes.
+		 * 
+		 * @return the period
+		 */
+		public double getPeriod() {
+			return 1 / getFrequency();
+		}
+		/**
+		 * Get the direction of the fringe lines in degrees, as given by {@link Spectrum.FringePeak#getAngle()}.
+		 * 
+		 * @return the angle of the fringes
+		 */
+		public double getAngle() {
+			return Spectrum.getFringeAngle(frequencyX, frequencyY);
+		}
+		
+		@Override public String toString() {
+			return String.format("PredictedFringe[period=%.3f, angle=%.2f]", getPeriod(), getAngle());
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package de.lennartmeinhardt.moiree;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.zip.Deflater;
+
+import de.lennartmeinhardt.moiree.MoireeCompositor.Sampling;
+import de.lennartmeinhardt.moiree.PngOptions.Filter;
+import javafx.scene.paint.Color;
+
+/**
+ * Renders a Moir image to a PNG file without starting the JavaFX toolkit.
+ * <p>
+ * Options are given as <code>--key=value</code> arguments, or as properties in a file named by <code>--config=file</code>.
+ * Arguments override the file. The pattern is sampled analytically and the image is encoded band by band,
+ * so memory use does not depend on the image size.
+ * 
+ * @author Lennart Meinhardt
+ */
+public final class HeadlessRenderer {
+	
+	public static final String ARG_HEADLESS = "--headless";
+	public static final String ARG_HELP = "--help";
+	public static final String ARG_HELP_SHORT = "-h";
+	
+	public static final String KEY_CONFIG = "config";
+	public static final String KEY_OUTPUT = "output";
+	public static final String KEY_MODE = "mode";
+	public static final String KEY_WIDTH = "width";
+	public static final String KEY_HEIGHT = "height";
+	public static final String KEY_PIXEL_SIZE = "pixelSize";
+	public static final String KEY_DENSITY = "density";
+	public static final String KEY_SEED = "seed";
+	public static final String KEY_ROTATE = "rotate";
+	public static final String KEY_TRANSLATE_X = "translateX";
+	public static final String KEY_TRANSLATE_Y = "translateY";
+	public static final String KEY_SCALE = "scale";
+	public static final String KEY_SCALE_X = "scaleX";
+	public static final String KEY_SCALE_Y = "scaleY";
+	public static final String KEY_FOREGROUND = "foreground";
+	public static final String KEY_BACKGROUND = "background";
+	public static final String KEY_ZOOM = "zoom";
+	public static final String KEY_SAMPLING = "sampling";
+	public static final String KEY_COMPRESSION = "compression";
+	public static final String KEY_FILTER = "filter";
+	public static final String KEY_INDEXED = "indexed";
+	
+	private static final String USAGE = String.join(System.lineSeparator(),
+			"Usage: " + ARG_HEADLESS + " --output=file.png [--config=file.properties] [--key=value ...]",
+			"  mode         random, squares, triangles, horizontal_lines or diagonal_lines (random)",
+			"  width        image width in pixels (1000)",
+			"  height       image height in pixels (1000)",
+			"  pixelSize    pattern pixel size (1)",
+			"  density      percentage of set pixels of the random mode (20)",
+			"  seed         seed of the random mode (0)",
+			"  rotate       rotation of the upper layer in degrees (0)",
+			"  translateX   x translation of the upper layer in pixels (0)",
+			"  translateY   y translation of the upper layer in pixels (0)",
+			"  scale        common scaling of the upper layer (1)",
+			"  scaleX       x scaling of the upper layer, overrides scale",
+			"  scaleY       y scaling of the upper layer, overrides scale",
+			"  foreground   pattern color, a CSS color like #000000 (black)",
+			"  background   background color (white)",
+			"  zoom         output pixels per pattern pixel (1)",
+			"  sampling     nearest or bilinear (nearest)",
+			"  compression  deflate level from 0 to 9 (default)",
+			"  filter       PNG row filter: none, sub, up, average, paeth, adaptive or automatic (automatic)",
+			"  indexed      true to write images with few colors as indexed PNGs, false for RGBA (true)");
+	
+	
+	private HeadlessRenderer() {}
+	
+	
+	/**
+	 * Render an image as described by the command line arguments and exit. Errors are reported on standard error
+	 * with a non-zero exit status. With {@value #ARG_HELP} or {@value #ARG_HELP_SHORT}, only the usage is printed.
+	 * 
+	 * @param args the arguments, the {@value #ARG_HEADLESS} flag is ignored
+	 */
+	public static void main(String[] args) {
+		if(isHelpRequested(args)) {
+			System.out.println(USAGE);
+			return;
+		}
+		try {
+			long start = System.nanoTime();
+			Path output = render(parseArguments(args));
+			System.out.printf("Wrote %s in %d ms%n", output, (System.nanoTime() - start) / 1_000_000);
+		} catch(IllegalArgumentException e) {
+			printError(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		} catch(IOException | RuntimeException e) {
+			printError(e.toString());
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Check if the arguments ask for the usage.
+	 * 
+	 * @param args the arguments
+	 * @return true if the arguments contain {@value #ARG_HELP} or {@value #ARG_HELP_SHORT}
+	 */
+	public static boolean isHelpRequested(String[] args) {
+		for(String arg : args)
+			if(arg.equals(ARG_HELP) || arg.equals(ARG_HELP_SHORT))
+				return true;
+		return false;
+	}
+	
+	private static void printError(String message) {
+		System.err.println("Error: " + message);
+	}
+	
+	/**
+	 * Collect the options of the command line. The options of a config file are loaded first,
+	 * so that the other arguments override them.
+	 * 
+	 * @param args the arguments
+	 * @return the options
+	 * @throws IOException if the config file could not be read
+	 * @throws IllegalArgumentException if an argument is malformed
+	 */
+	public static Properties parseArguments(String[] args) throws IOException, IllegalArgumentException {
+		Properties arguments = new Properties();
+		for(String arg : args) {
+			if(arg.equals(ARG_HEADLESS))
+				continue;
+			int separator = arg.indexOf('=');
+			if(! arg.startsWith("--") || separator < 3)
+				throw new IllegalArgumentException("Invalid argument " + arg);
+			arguments.setProperty(arg.substring(2, separator), arg.substring(separator + 1));
+		}
+		
+		Properties options = new Properties();
+		String config = arguments.getProperty(KEY_CONFIG);
+		if(config != null) {
+			try(InputStream in = Files.newInputStream(Paths.get(config))) {
+				options.load(in);
+			}
+		}
+		options.putAll(arguments);
+		return options;
+	}
+	
+	/**
+	 * Render an image and write it to the output file.
+	 * 
+	 * @param options the options, see the usage for the keys
+	 * @return the written file
+	 * @throws IOException if writing fails
+	 * @throws IllegalArgumentException if an option is missing or invalid
+	 */
+	public static Path render(Properties options) throws IOException, IllegalArgumentException {
+		String output = options.getProperty(KEY_OUTPUT);
+		if(output == null)
+			throw new IllegalArgumentException("No " + KEY_OUTPUT + " given");
+		Path file = Paths.get(output);
+		
+		ImageSettings settings = createImageSettings(options);
+		MoireeTransform transform = createTransform(options);
+		Sampling sampling = getEnum(options, KEY_SAMPLING, Sampling.class, Sampling.NEAREST);
+		int foreground = getColor(options, KEY_FOREGROUND, Color.BLACK);
+		int background = getColor(options, KEY_BACKGROUND, Color.WHITE);
+		double zoom = getDouble(options, KEY_ZOOM, 1);
+		if(! (zoom > 0))
+			throw new IllegalArgumentException("Invalid " + KEY_ZOOM + " " + zoom);
+		PngOptions pngOptions = new PngOptions(getInt(options, KEY_COMPRESSION, Deflater.DEFAULT_COMPRESSION),
+				getEnum(options, KEY_FILTER, Filter.class, Filter.AUTOMATIC), getBoolean(options, KEY_INDEXED, true));
+		
+		MoireeCompositor compositor = new MoireeCompositor(settings.getImageMode().createSampler(settings),
+				settings.getImageWidth(), settings.getImageHeight(), transform, sampling, foreground, background, zoom);
+		SavingHelper.writePng(compositor, file, pngOptions);
+		return file;
+	}
+	
+	private static ImageSettings createImageSettings(Properties options) {
+		ImageSettings settings = new ImageSettings();
+		settings.setImageMode(getEnum(options, KEY_MODE, MoireeImageMode.class, MoireeImageMode.RANDOM));
+		settings.setImageWidth(getInt(options, KEY_WIDTH, 1000));
+		settings.setImageHeight(getInt(options, KEY_HEIGHT, 1000));
+		settings.setPixelSize(getInt(options, KEY_PIXEL_SIZE, 1));
+		settings.setPixelDensity(getDouble(options, KEY_DENSITY, 20));
+		settings.setRandomSeed(getLong(options, KEY_SEED, 0));
+		
+		if(settings.getImageWidth() <= 0 || settings.getImageHeight() <= 0)
+			throw new IllegalArgumentException("Invalid image size " + settings.getImageWidth() + "x" + settings.getImageHeight());
+		if(settings.getPixelSize() <= 0)
+			throw new IllegalArgumentException("Invalid " + KEY_PIXEL_SIZE + " " + settings.getPixelSize());
+		if(! (settings.getPixelDensity() >= 0 && settings.getPixelDensity() <= 100))
+			throw new IllegalArgumentException("Invalid " + KEY_DENSITY + " " + settings.getPixelDensity());
+		return settings;
+	}
+	
+	private static MoireeTransform createTransform(Properties options) {
+		double scale = getDouble(options, KEY_SCALE, 1);
+		return new MoireeTransform(
+				getDouble(options, KEY_ROTATE, 0),
+				getDouble(options, KEY_TRANSLATE_X, 0),
+				getDouble(options, KEY_TRANSLATE_Y, 0),
+				getDouble(options, KEY_SCALE_X, scale),
+				getDouble(options, KEY_SCALE_Y, scale));
+	}
+	
+	private static int getInt(Properties options, String key, int defaultValue) {
+		String value = options.getProperty(key);
+		try {
+			return value == null ? defaultValue : Integer.parseInt(value.trim());
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + key + " " + value);
+		}
+	}
+	
+	private static long getLong(Properties options, String key, long defaultValue) {
+		String value = options.getProperty(key);
+		try {
+			return value == null ? defaultValue : Long.parseLong(value.trim());
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + key + " " + value);
+		}
+	}
+	
+	private static double getDouble(Properties options, String key, double defaultValue) {
+		String value = options.getProperty(key);
+		try {
+			return value == null ? defaultValue : Double.parseDouble(value.trim());
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + key + " " + value);
+		}
+	}
+	
+	private static boolean getBoolean(Properties options, String key, boolean defaultValue) {
+		String value = options.getProperty(key);
+		if(value == null)
+			return defaultValue;
+		else if(value.trim().equalsIgnoreCase("true"))
+			return true;
+		else if(value.trim().equalsIgnoreCase("false"))
+			return false;
+		throw new IllegalArgumentException("Invalid " + key + " " + value);
+	}
+	
+	private static int getColor(Properties options, String key, Color defaultValue) {
+		String value = options.getProperty(key);
+		try {
+			return Drawing.toArgb(value == null ? defaultValue : Color.web(value.trim()));
+		} catch(IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid " + key + " " + value);
+		}
+	}
+	
+	private static <E extends Enum<E>> E getEnum(Properties options, String key, Class<E> type, E defaultValue) {
+		String value = options.getProperty(key);
+		try {
+			return value == null ? defaultValue : Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+		} catch(IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid " + key + " " + value);
+		}
+	}
+}
@@ -2,9 +2,11 @@ package de.lennartmeinhardt.moiree;
 
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.LongProperty;
 import javafx.beans.property.Property;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleLongProperty;
 import javafx.beans.property.SimpleObjectProperty;
 
 /**
@@ -21,6 +23,7 @@ public class ImageSettings {
 
 	private final IntegerProperty pixelSizeProperty = new SimpleIntegerProperty();
 	private final DoubleProperty pixelDensityProperty = new SimpleDoubleProperty();
+	private final LongProperty randomSeedProperty = new SimpleLongProperty();
 
 	
 	public Property<MoireeImageMode> imageModeProperty() {
@@ -73,4 +76,14 @@ public class ImageSettings {
 	public void setPixelDensity(double value) {
 		pixelDensityProperty.set(value);
 	}
+	
+	public LongProperty randomSeedProperty() {
+		return randomSeedProperty;
+	}
+	public long getRandomSeed() {
+		return randomSeedProperty.get();
+	}
+	public void setRandomSeed(long value) {
+		randomSeedProperty.set(value);
+	}
 }
@@ -1,16 +1,19 @@
 package de.lennartmeinhardt.moiree;
 
 import java.net.URL;
+import java.util.Random;
 import java.util.ResourceBundle;
 import java.util.function.Predicate;
 
 import de.lennartmeinhardt.moiree.ParserTextField.Parser;
 import javafx.beans.binding.BooleanBinding;
+import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.util.StringConverter;
 
 /**
@@ -20,6 +23,9 @@ import javafx.util.StringConverter;
  */
 public class ImageSetupController implements Initializable {
 	
+	// largest image width and height. Large random patterns are kept in pattern files, larger images only show their preview
+	public static final int MAX_IMAGE_SIZE = 100000;
+	
 	@FXML private GridPane imageSetupGrid;
 	@FXML private ComboBox<MoireeImageMode> moireeModeCombobox;
 	@FXML private ParserTextField<Integer> widthInput;
@@ -27,6 +33,9 @@ public class ImageSetupController implements Initializable {
 	@FXML private ParserTextField<Integer> pixelSizeInput;
 	@FXML private ParserTextField<Double> pixelDensityInput;
 	@FXML private Label pixelDensityLabel;
+	@FXML private ParserTextField<Long> randomSeedInput;
+	@FXML private Label randomSeedLabel;
+	@FXML private HBox randomSeedBox;
 
 	// determines if all input is valid
 	private BooleanBinding allInputValidBinding;
@@ -42,7 +51,8 @@ public class ImageSetupController implements Initializable {
 				MoireeImageMode.RANDOM,
 				MoireeImageMode.SQUARES,
 				MoireeImageMode.TRIANGLES,
-				MoireeImageMode.HORIZONTAL_LINES
+				MoireeImageMode.HORIZONTAL_LINES,
+				MoireeImageMode.DIAGONAL_LINES
 		);
 		moireeModeCombobox.setConverter(new StringConverter<MoireeImageMode>() {
 			@Override public String toString(MoireeImageMode object) {
@@ -59,23 +69,32 @@ public class ImageSetupController implements Initializable {
 		
 		Predicate<Double> pixelDensityChecker = i -> i >= 0 && i <= 100;
 		pixelDensityInput.setParser(Parser.DOUBLE_PARSER.withVeto(pixelDensityChecker));
+		
+		randomSeedInput.setParser(Parser.LONG_PARSER);
 
-		Predicate<Integer> dimensionChecker = i -> i >= 100 && i <= 10000;
+		Predicate<Integer> dimensionChecker = i -> i >= 100 && i <= MAX_IMAGE_SIZE;
 		Parser<Integer> dimensionParser = (Parser.INT_PARSER).withVeto(dimensionChecker);
 		widthInput.setParser(dimensionParser);
 		heightInput.setParser(dimensionParser);
 		
-		// disable density setup if random isn't selected
+		// disable density and seed setup if random isn't selected
 		BooleanBinding modeIsNotRandom = moireeModeCombobox.valueProperty().isNotEqualTo(MoireeImageMode.RANDOM);
 		pixelDensityLabel.disableProperty().bind(modeIsNotRandom);
 		pixelDensityInput.disableProperty().bind(modeIsNotRandom);
+		randomSeedLabel.disableProperty().bind(modeIsNotRandom);
+		randomSeedBox.disableProperty().bind(modeIsNotRandom);
 		
 		// create the binding that checks if all input is correct
 		allInputValidBinding = moireeModeCombobox.getSelectionModel().selectedItemProperty().isNotNull()
 				.and(widthInput.parseSuccessfulProperty())
 				.and(heightInput.parseSuccessfulProperty())
 				.and(pixelSizeInput.parseSuccessfulProperty())
-				.and(pixelDensityInput.parseSuccessfulProperty());
+				.and(pixelDensityInput.parseSuccessfulProperty())
+				.and(randomSeedInput.parseSuccessfulProperty());
+	}
+	
+	@FXML private void onNewRandomSeedClicked(ActionEvent ev) {
+		randomSeedInput.setText("" + new Random().nextLong());
 	}
 	
 	
@@ -90,6 +109,7 @@ public class ImageSetupController implements Initializable {
 		moireeModeCombobox.getSelectionModel().select(settings.getImageMode().ordinal());
 		widthInput.setText("" + settings.getImageWidth());
 		heightInput.setText("" + settings.getImageHeight());
+		randomSeedInput.setText("" + settings.getRandomSeed());
 	}
 	
 	/**
@@ -103,6 +123,7 @@ public class ImageSetupController implements Initializable {
 		settings.setImageMode(MoireeImageMode.getInstance(moireeModeCombobox.getSelectionModel().getSelectedIndex()));
 		settings.setImageWidth(widthInput.getParsedValue());
 		settings.setImageHeight(heightInput.getParsedValue());
+		settings.setRandomSeed(randomSeedInput.getParsedValue());
 	}
 	
 	public BooleanBinding allInputValidBinding() {
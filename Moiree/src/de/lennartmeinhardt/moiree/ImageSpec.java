@@ -0,0 +1,116 @@
+package de.lennartmeinhardt.moiree;
+
+/**
+ * Immutable description of a generated pattern, derived from {@link ImageSettings}. Specs of equal patterns are equal:
+ * the density and seed only matter for the random mode and are ignored for all others.
+ * 
+ * @author Lennart Meinhardt
+ */
+public final class ImageSpec {
+	
+	private final MoireeImageMode imageMode;
+	private final int imageWidth;
+	private final int imageHeight;
+	private final int pixelSize;
+	private final double pixelDensity;
+	private final long randomSeed;
+	
+	
+	private ImageSpec(MoireeImageMode imageMode, int imageWidth, int imageHeight, int pixelSize, double pixelDensity, long randomSeed) {
+		this.imageMode = imageMode;
+		this.imageWidth = imageWidth;
+		this.imageHeight = imageHeight;
+		this.pixelSize = pixelSize;
+		this.pixelDensity = pixelDensity;
+		this.randomSeed = randomSeed;
+	}
+	
+	/**
+	 * Get the spec of the pattern described by given settings.
+	 * 
+	 * @param settings the image settings
+	 * @return the spec
+	 */
+	public static ImageSpec of(ImageSettings settings) {
+		MoireeImageMode mode = settings.getImageMode();
+		boolean random = mode == MoireeImageMode.RANDOM;
+		return new ImageSpec(mode, settings.getImageWidth(), settings.getImageHeight(), settings.getPixelSize(),
+				random ? settings.getPixelDensity() : 0, random ? settings.getRandomSeed() : 0);
+	}
+	
+	
+	public MoireeImageMode getImageMode() {
+		return imageMode;
+	}
+	public int getImageWidth() {
+		return imageWidth;
+	}
+	public int getImageHeight() {
+		return imageHeight;
+	}
+	public int getPixelSize() {
+		return pixelSize;
+	}
+	public double getPixelDensity() {
+		return pixelDensity;
+	}
+	public long getRandomSeed() {
+		return randomSeed;
+	}
+	
+	/**
+	 * Create new settings that describe this spec.
+	 * 
+	 * @return the settings
+	 */
+	public ImageSettings toImageSettings() {
+		ImageSettings settings = new ImageSettings();
+		settings.setImageMode(imageMode);
+		settings.setImageWidth(imageWidth);
+		settings.setImageHeight(imageHeight);
+		settings.setPixelSize(pixelSize);
+		settings.setPixelDensity(pixelDensity);
+		settings.setRandomSeed(randomSeed);
+		return settings;
+	}
+	
+	/**
+	 * Generate the pattern of this spec, taking large tiles from a pattern file cache,
+	 * see {@link MoireeImageMode#createRaster(ImageSettings, PatternFileCache)}.
+	 * 
+	 * @param fileCache the cache of large tiles, or null to draw all tiles on the heap
+	 * @return the new pattern
+	 */
+	public PatternRaster createRaster(PatternFileCache fileCache) {
+		return imageMode.createRaster(toImageSettings(), fileCache);
+	}
+	
+	@Override public boolean equals(Object obj) {
+		if(this == obj)
+			return true;
+		if(! (obj instanceof ImageSpec))
+			return false;
+		ImageSpec other = (ImageSpec) obj;
+		return imageMode == other.imageMode
+				&& imageWidth == other.imageWidth
+				&& imageHeight == other.imageHeight
+				&& pixelSize == other.pixelSize
+				&& Double.compare(pixelDensity, other.pixelDensity) == 0
+				&& randomSeed == other.randomSeed;
+	}
+	
+	@Override public int hashCode() {
+		int hash = imageMode.hashCode();
+		hash = 31 * hash + imageWidth;
+		hash = 31 * hash + imageHeight;
+		hash = 31 * hash + pixelSize;
+		hash = 31 * hash + Double.hashCode(pixelDensity);
+		hash = 31 * hash + Long.hashCode(randomSeed);
+		return hash;
+	}
+	
+	@Override public String toString() {
+		return "ImageSpec[imageMode=" + imageMode + ", imageWidth=" + imageWidth + ", imageHeight=" + imageHeight
+				+ ", pixelSize=" + pixelSize + ", pixelDensity=" + pixelDensity + ", randomSeed=" + randomSeed + "]";
+	}
+}
@@ -0,0 +1,186 @@
+package de.lennartmeinhardt.moiree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A two-valued image that stores one bit per pixel in a memory-mapped file, in the row layout of a {@link BitRaster}.
+ * The pixels do not use heap memory, and the operating system pages them in and out as needed,
+ * so rasters can be larger than the heap.
+ * <p>
+ * A single mapping is limited to 2 GB, so the file is mapped in chunks of whole rows of at most {@link #CHUNK_BYTES} bytes.
+ * The mappings are released when the raster is garbage collected. The file is not deleted.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class MappedRaster implements WritablePatternRaster {
+	
+	public static final int CHUNK_BYTES = 1 << 30;
+	
+	private final int width;
+	private final int height;
+	// number of words used by a single row
+	private final int wordsPerRow;
+	// number of rows mapped by each chunk
+	private final int rowsPerChunk;
+	// the mapped chunks, and their words row by row
+	private final MappedByteBuffer[] mappings;
+	private final LongBuffer[] chunks;
+	
+	
+	private MappedRaster(FileChannel channel, MapMode mode, int width, int height) throws IOException {
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = BitRaster.getWordsPerRow(width);
+		this.rowsPerChunk = CHUNK_BYTES / (wordsPerRow * Long.BYTES);
+		this.mappings = new MappedByteBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+		this.chunks = new LongBuffer[mappings.length];
+		long chunkBytes = (long) rowsPerChunk * wordsPerRow * Long.BYTES;
+		for(int chunk = 0; chunk < chunks.length; chunk++) {
+			long position = chunk * chunkBytes;
+			mappings[chunk] = channel.map(mode, position, Math.min(chunkBytes, getByteSize() - position));
+			chunks[chunk] = mappings[chunk].order(ByteOrder.nativeOrder()).asLongBuffer();
+		}
+	}
+	
+	/**
+	 * Create a cleared raster in a file. An existing file is overwritten.
+	 * 
+	 * @param file the file to store the pixels in
+	 * @param width the width in pixels
+	 * @param height the height in pixels
+	 * @return the new raster
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	public static MappedRaster create(Path file, int width, int height) throws IOException {
+		checkSize(width, height);
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// a sparse file of zeros, the pages are only allocated when written
+			channel.write(ByteBuffer.allocate(1), getByteSize(width, height) - 1);
+			return new MappedRaster(channel, MapMode.READ_WRITE, width, height);
+		}
+	}
+	
+	/**
+	 * Map a raster that was created by {@link #create(Path, int, int)} before, for reading only.
+	 * 
+	 * @param file the file of the raster
+	 * @param width the width in pixels
+	 * @param height the height in pixels
+	 * @return the raster
+	 * @throws IOException if the file cannot be mapped or does not have the size of such a raster
+	 */
+	public static MappedRaster open(Path file, int width, int height) throws IOException {
+		checkSize(width, height);
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() != getByteSize(width, height))
+				throw new IOException("File " + file + " does not hold a " + width + "x" + height + " raster");
+			return new MappedRaster(channel, MapMode.READ_ONLY, width, height);
+		}
+	}
+	
+	/**
+	 * Get the file size of a raster of given dimensions.
+	 * 
+	 * @param width the width in pixels
+	 * @param height the height in pixels
+	 * @return size of the pixel data in bytes
+	 */
+	public static long getByteSize(int width, int height) {
+		return (long) BitRaster.getWordsPerRow(width) * Long.BYTES * height;
+	}
+	
+	private static void checkSize(int width, int height) {
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid raster size " + width + "x" + height);
+	}
+	
+	@Override public int getWidth() {
+		return width;
+	}
+	@Override public int getHeight() {
+		return height;
+	}
+	
+	@Override public boolean isSet(int x, int y) {
+		return (chunks[y / rowsPerChunk].get(getRowStart(y) + (x >>> 6)) & (1L << x)) != 0;
+	}
+	
+	@Override public void readRow(int y, long[] row) {
+		LongBuffer chunk = chunks[y / rowsPerChunk];
+		int rowStart = getRowStart(y);
+		for(int word = 0; word < wordsPerRow; word++)
+			row[word] = chunk.get(rowStart + word);
+	}
+	
+	/**
+	 * Replace a row's bits by the given ones.
+	 * 
+	 * @throws java.nio.ReadOnlyBufferException if the raster was opened for reading only
+	 */
+	@Override public void writeRow(int y, long[] row) {
+		LongBuffer chunk = chunks[y / rowsPerChunk];
+		int rowStart = getRowStart(y);
+		for(int word = 0; word < wordsPerRow; word++)
+			chunk.put(rowStart + word, row[word]);
+	}
+	
+	/**
+	 * Write the pixels to the storage device, so the file is complete even if the system crashes.
+	 */
+	public void force() {
+		for(MappedByteBuffer mapping : mappings)
+			mapping.force();
+	}
+	
+	@Override public void expandRow(int y, int x, int length, int[] argbs, int offset, int setArgb, int unsetArgb) {
+		LongBuffer chunk = chunks[y / rowsPerChunk];
+		int rowStart = getRowStart(y);
+		// every word is read once for its 64 pixels
+		long word = 0;
+		for(int i = 0; i < length; i++) {
+			int column = x + i;
+			if(i == 0 || (column & 63) == 0)
+				word = chunk.get(rowStart + (column >>> 6));
+			argbs[offset + i] = (word & (1L << column)) != 0 ? setArgb : unsetArgb;
+		}
+	}
+	
+	@Override public void expandRow(int y, int x, int length, IntBuffer argbs, int offset, int setArgb, int unsetArgb) {
+		LongBuffer chunk = chunks[y / rowsPerChunk];
+		int rowStart = getRowStart(y);
+		long word = 0;
+		for(int i = 0; i < length; i++) {
+			int column = x + i;
+			if(i == 0 || (column & 63) == 0)
+				word = chunk.get(rowStart + (column >>> 6));
+			argbs.put(offset + i, (word & (1L << column)) != 0 ? setArgb : unsetArgb);
+		}
+	}
+	
+	/**
+	 * Get the size of the mapped file. The pixels are held by the operating system's page cache, not by the heap.
+	 */
+	@Override public long getByteSize() {
+		return getByteSize(width, height);
+	}
+	
+	/**
+	 * Get the index of a row's first word in its chunk.
+	 * 
+	 * @param y the row index
+	 * @return the word index
+	 */
+	private int getRowStart(int y) {
+		return (y % rowsPerChunk) * wordsPerRow;
+	}
+}
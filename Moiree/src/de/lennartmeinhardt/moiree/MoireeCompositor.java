@@ -0,0 +1,336 @@
+package de.lennartmeinhardt.moiree;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import de.lennartmeinhardt.moiree.Bands.BandConsumer;
+
+/**
+ * Renders the Moir image of a pattern without JavaFX. The untransformed pattern is drawn over the background,
+ * the transformed pattern is drawn over both. Every output pixel is mapped back to the pattern
+ * through the inverse transformation and sampled there.
+ * <p>
+ * Like the views on screen, each layer is drawn source-over in premultiplied colors, with the sampled coverage
+ * scaling the foreground. So a translucent foreground lets the background shine through, and overlapping
+ * layers are darker than a single one.
+ * <p>
+ * The pattern is read through a {@link PatternSampler}, either of a raster or an analytic one. Analytic samplers
+ * do not need any pattern memory and stay sharp at any zoom with nearest sampling.
+ * <p>
+ * The output shows the bounds of the untransformed pattern, scaled by the zoom factor.
+ * Compositors are immutable and can render from several threads at once.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class MoireeCompositor implements ScanlineSource {
+	
+	private final PatternSampler sampler;
+	// the pattern bounds, samples outside of them are not set
+	private final int patternWidth;
+	private final int patternHeight;
+	private final MoireeTransform transform;
+	private final Sampling sampling;
+	private final int foregroundArgb;
+	private final int backgroundArgb;
+	// output pixels per pattern pixel
+	private final double zoom;
+	private final int width;
+	private final int height;
+	// maps pattern coordinates to coordinates of the untransformed pattern
+	private final double[] inverse;
+	// premultiplied alpha, red, green and blue between 0 and 1
+	private final double[] foreground;
+	private final double[] background;
+	// the colors of pixels fully covered by one and by both layers
+	private final int oneLayerArgb;
+	private final int bothLayersArgb;
+	
+	
+	/**
+	 * Create a new {@link MoireeCompositor} rendering at the pattern's size.
+	 * 
+	 * @param pattern the pattern to render
+	 * @param transform the transformation of the upper pattern
+	 * @param sampling the sampling method
+	 * @param foregroundArgb the color of set pattern pixels
+	 * @param backgroundArgb the background color
+	 */
+	public MoireeCompositor(PatternRaster pattern, MoireeTransform transform, Sampling sampling, int foregroundArgb, int backgroundArgb) {
+		this(pattern, transform, sampling, foregroundArgb, backgroundArgb, 1);
+	}
+	
+	/**
+	 * Create a new {@link MoireeCompositor}.
+	 * 
+	 * @param pattern the pattern to render
+	 * @param transform the transformation of the upper pattern
+	 * @param sampling the sampling method
+	 * @param foregroundArgb the color of set pattern pixels
+	 * @param backgroundArgb the background color
+	 * @param zoom the number of output pixels per pattern pixel
+	 */
+	public MoireeCompositor(PatternRaster pattern, MoireeTransform transform, Sampling sampling, int foregroundArgb, int backgroundArgb, double zoom) {
+		this(PatternSampler.of(pattern), pattern.getWidth(), pattern.getHeight(), transform, sampling, foregroundArgb, backgroundArgb, zoom);
+	}
+	
+	/**
+	 * Create a new {@link MoireeCompositor} for a sampled pattern.
+	 * 
+	 * @param sampler the pattern sampler
+	 * @param patternWidth the width of the pattern bounds
+	 * @param patternHeight the height of the pattern bounds
+	 * @param transform the transformation of the upper pattern
+	 * @param sampling the sampling method
+	 * @param foregroundArgb the color of set pattern pixels
+	 * @param backgroundArgb the background color
+	 * @param zoom the number of output pixels per pattern pixel
+	 */
+	public MoireeCompositor(PatternSampler sampler, int patternWidth, int patternHeight, MoireeTransform transform, Sampling sampling,
+			int foregroundArgb, int backgroundArgb, double zoom) {
+		if(! (zoom > 0))
+			throw new IllegalArgumentException("Invalid zoom " + zoom);
+		this.sampler = sampler;
+		this.patternWidth = patternWidth;
+		this.patternHeight = patternHeight;
+		this.transform = transform;
+		this.sampling = sampling;
+		this.foregroundArgb = foregroundArgb;
+		this.backgroundArgb = backgroundArgb;
+		this.zoom = zoom;
+		this.width = Math.max(1, (int) Math.round(patternWidth * zoom));
+		this.height = Math.max(1, (int) Math.round(patternHeight * zoom));
+		this.inverse = transform.getInverseMatrix(patternWidth / 2., patternHeight / 2.);
+		this.foreground = toPremultiplied(foregroundArgb);
+		this.background = toPremultiplied(backgroundArgb);
+		this.oneLayerArgb = composite(1, 0);
+		this.bothLayersArgb = composite(1, 1);
+	}
+	
+	
+	public PatternSampler getSampler() {
+		return sampler;
+	}
+	public int getPatternWidth() {
+		return patternWidth;
+	}
+	public int getPatternHeight() {
+		return patternHeight;
+	}
+	public MoireeTransform getTransform() {
+		return transform;
+	}
+	public Sampling getSampling() {
+		return sampling;
+	}
+	public int getForegroundArgb() {
+		return foregroundArgb;
+	}
+	public int getBackgroundArgb() {
+		return backgroundArgb;
+	}
+	public double getZoom() {
+		return zoom;
+	}
+	
+	/**
+	 * Create a compositor that differs from this one only in the transformation of the upper layer.
+	 * 
+	 * @param transform the new transformation
+	 * @return the new compositor
+	 */
+	public MoireeCompositor withTransform(MoireeTransform transform) {
+		return new MoireeCompositor(sampler, patternWidth, patternHeight, transform, sampling, foregroundArgb, backgroundArgb, zoom);
+	}
+	
+	/**
+	 * Get the output width.
+	 * 
+	 * @return the width in pixels
+	 */
+	@Override public int getWidth() {
+		return width;
+	}
+	/**
+	 * Get the output height.
+	 * 
+	 * @return the height in pixels
+	 */
+	@Override public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Render the whole image, band by band in parallel. The bands are handed to the consumer in ascending order.
+	 * 
+	 * @param consumer the object receiving the rendered bands
+	 * @throws IOException if the consumer throws it
+	 */
+	@Override public void render(BandConsumer consumer) throws IOException {
+		Bands.fillInOrder(width, height, (y, rows, argbs) -> renderRows(y, rows, argbs, 0), consumer);
+	}
+	
+	/**
+	 * With nearest sampling, pixels show the background, one layer or both layers. Bilinear sampling creates intermediate colors.
+	 */
+	@Override public int[] getPalette() {
+		if(sampling != Sampling.NEAREST)
+			return null;
+		int[] palette = {backgroundArgb, oneLayerArgb, bothLayersArgb};
+		int colors = 1;
+		for(int i = 1; i < palette.length; i++)
+			if(palette[i] != palette[colors - 1])
+				palette[colors++] = palette[i];
+		return Arrays.copyOf(palette, colors);
+	}
+	
+	/**
+	 * Render the whole image in parallel into a new array.
+	 * 
+	 * @return the ARGB pixels, row after row
+	 */
+	public int[] render() {
+		int[] argbs = new int[Math.multiplyExact(width, height)];
+		try {
+			render((y, rows, band) -> System.arraycopy(band, 0, argbs, y * width, rows * width));
+		} catch(IOException e) {
+			// not thrown by the array copy
+			throw new IllegalStateException(e);
+		}
+		return argbs;
+	}
+	
+	/**
+	 * Render rows on the calling thread.
+	 * 
+	 * @param y the first row to render
+	 * @param rows the number of rows
+	 * @param argbs the array to write to, row after row, with a scanline stride of the output width
+	 * @param offset the array index of the first pixel
+	 */
+	public void renderRows(int y, int rows, int[] argbs, int offset) {
+		renderRegion(0, y, width, rows, argbs, offset);
+	}
+	
+	/**
+	 * Render a rectangular region of rows on the calling thread.
+	 * 
+	 * @param x the first column to render
+	 * @param y the first row to render
+	 * @param regionWidth the number of columns
+	 * @param rows the number of rows
+	 * @param argbs the array to write to, row after row, with a scanline stride of the region width
+	 * @param offset the array index of the first pixel
+	 */
+	public void renderRegion(int x, int y, int regionWidth, int rows, int[] argbs, int offset) {
+		for(int row = 0; row < rows; row++) {
+			// pattern coordinates of the row's pixel centers
+			double patternY = (y + row + .5) / zoom;
+			int index = offset + row * regionWidth - x;
+			for(int column = x; column < x + regionWidth; column++) {
+				double patternX = (column + .5) / zoom;
+				double bottom = sample(patternX, patternY);
+				double top = sample(inverse[0] * patternX + inverse[1] * patternY + inverse[2], inverse[3] * patternX + inverse[4] * patternY + inverse[5]);
+				argbs[index + column] = getArgb(bottom, top);
+			}
+		}
+	}
+	
+	/**
+	 * Sample the pattern at given coordinates. Outside of the pattern nothing is set.
+	 * 
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return coverage between 0 and 1
+	 */
+	private double sample(double x, double y) {
+		switch(sampling) {
+		case BILINEAR:
+			// pixel centers are at half coordinates
+			double fx = x - .5;
+			double fy = y - .5;
+			int x0 = (int) Math.floor(fx);
+			int y0 = (int) Math.floor(fy);
+			double wx = fx - x0;
+			double wy = fy - y0;
+			return (1 - wy) * ((1 - wx) * coverage(x0, y0) + wx * coverage(x0 + 1, y0))
+					+ wy * ((1 - wx) * coverage(x0, y0 + 1) + wx * coverage(x0 + 1, y0 + 1));
+		case NEAREST:
+		default:
+			if(x < 0 || y < 0 || x >= patternWidth || y >= patternHeight)
+				return 0;
+			return sampler.isSet(x, y) ? 1 : 0;
+		}
+	}
+	
+	/**
+	 * Get the coverage of a pattern pixel, sampled at its center.
+	 * 
+	 * @param x the pixel column
+	 * @param y the pixel row
+	 * @return 1 if the pixel is set, 0 else
+	 */
+	private double coverage(int x, int y) {
+		if(x < 0 || y < 0 || x >= patternWidth || y >= patternHeight)
+			return 0;
+		return sampler.isSet(x + .5, y + .5) ? 1 : 0;
+	}
+	
+	/**
+	 * Get the color of a pixel by the coverages of both layers. Pixels that are fully covered or not covered
+	 * take precomputed colors, only partially covered pixels of bilinear sampling are blended.
+	 */
+	private int getArgb(double bottom, double top) {
+		if((bottom == 0 || bottom == 1) && (top == 0 || top == 1)) {
+			if(bottom == 0 && top == 0)
+				return backgroundArgb;
+			return bottom == 1 && top == 1 ? bothLayersArgb : oneLayerArgb;
+		}
+		return composite(bottom, top);
+	}
+	
+	/**
+	 * Draw the lower and then the upper layer source-over onto the background, in premultiplied colors.
+	 * 
+	 * @param bottom the coverage of the lower layer
+	 * @param top the coverage of the upper layer
+	 * @return the resulting non-premultiplied ARGB color
+	 */
+	private int composite(double bottom, double top) {
+		double bottomAlpha = foreground[0] * bottom;
+		double topAlpha = foreground[0] * top;
+		double alpha = topAlpha + (bottomAlpha + background[0] * (1 - bottomAlpha)) * (1 - topAlpha);
+		if(alpha <= 0)
+			return 0;
+		int argb = toByte(alpha) << 24;
+		for(int channel = 1; channel < 4; channel++) {
+			double value = foreground[channel] * top + (foreground[channel] * bottom + background[channel] * (1 - bottomAlpha)) * (1 - topAlpha);
+			argb |= toByte(value / alpha) << 8 * (3 - channel);
+		}
+		return argb;
+	}
+	
+	/**
+	 * Convert a non-premultiplied ARGB color to premultiplied channels.
+	 * 
+	 * @return alpha, red, green and blue between 0 and 1
+	 */
+	private static double[] toPremultiplied(int argb) {
+		double alpha = (argb >>> 24) / 255.;
+		return new double[] {alpha, ((argb >> 16) & 0xff) / 255. * alpha, ((argb >> 8) & 0xff) / 255. * alpha, (argb & 0xff) / 255. * alpha};
+	}
+	
+	private static int toByte(double value) {
+		return (int) Math.round(Math.max(0, Math.min(1, value)) * 255);
+	}
+	
+	
+	/**
+	 * The ways of sampling the pattern at non-integer coordinates.
+	 */
+	public static enum Sampling {
+		/** Use the value at the coordinates, which is the pixel containing them for rasters. */
+		NEAREST,
+		/** Interpolate the four surrounding pixel centers. */
+		BILINEAR;
+	}
+}
@@ -2,31 +2,42 @@ package de.lennartmeinhardt.moiree;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.ResourceBundle;
 
-import javafx.beans.property.Property;
-import javafx.beans.property.SimpleObjectProperty;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+
+import de.lennartmeinhardt.moiree.FringePredictor.PredictedFringe;
+import de.lennartmeinhardt.moiree.PngOptions.Filter;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.InvalidationListener;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Node;
-import javafx.scene.SnapshotParameters;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ColorPicker;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
 import javafx.scene.control.TitledPane;
-import javafx.scene.effect.Blend;
-import javafx.scene.effect.BlendMode;
-import javafx.scene.effect.ColorInput;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.scene.image.WritableImage;
 import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.stage.Window;
+import javafx.util.Duration;
+import javafx.util.StringConverter;
 
 /**
  * Core class for managing the Moir window.
@@ -42,24 +53,55 @@ public class MoireeController implements Initializable {
 	@FXML private Node root;
 	
 	@FXML private StackPane moireePane;
-	@FXML private ImageView untransformedView;
-	@FXML private ImageView transformedView;
+	@FXML private TiledPatternView untransformedView;
+	@FXML private TiledPatternView transformedView;
 	@FXML private Rectangle moireeBackground;
+	@FXML private Label metricsOverlay;
+	@FXML private FringeOverlay fringeOverlay;
+	@FXML private Label fringeLabel;
 
 	@FXML private TitledPane transformationSetup;
 	@FXML private TransformationSetupController transformationSetupController;
+	@FXML private SpectrumAnalysisController spectrumAnalysisController;
 
 	@FXML private ColorPicker foregroundColorPicker;
 	@FXML private ColorPicker backgroundColorPicker;
 	
 	@FXML private TitledPane imagePane;
+	@FXML private VBox exportsBox;
+	@FXML private CheckBox showMetricsCheckBox;
+	@FXML private CheckBox showFringesCheckBox;
+	@FXML private ComboBox<Integer> pngCompressionCombobox;
+	@FXML private ComboBox<Filter> pngFilterCombobox;
+	@FXML private CheckBox pngIndexedCheckBox;
 	
-	private final Property<WritableImage> imageProperty = new SimpleObjectProperty<>();
+	// the current pattern, the images only hold its colored pixels for display
+	private PatternRaster pattern;
+	// the spec and color of the current image
+	private ImageSpec patternSpec;
+	private int patternArgb;
+	// the spec and color of the current image, or of the image being generated
+	private ImageSpec requestedSpec;
+	private int requestedArgb;
+	// performance measurements, shown in the overlay and published through JMX
+	private final MoireeMetrics metrics = new MoireeMetrics();
+	// generates new patterns in the background
+	private final PatternService patternService = new PatternService(new PatternCache(), new PatternFileCache(), metrics);
+	// shows the preview during interaction and refines patterns to full resolution
+	private ProgressiveRefiner refiner;
 	
 	private ResourceBundle resources;
 	private final ImageSettings imageSettings = new ImageSettings();
 	private final PreferencesHelper preferences = new PreferencesHelper();
 	private SavingHelper ioHelper;
+	// applies the transformation to the upper view once per pulse
+	private ViewTransformUpdater transformUpdater;
+	// refreshes the metrics overlay while it is shown
+	private final Timeline metricsOverlayUpdater = new Timeline(new KeyFrame(Duration.millis(500), ev -> updateMetricsOverlay()));
+	// measure the scene's part of each pulse
+	private long pulseStartNanos;
+	private final Runnable pulseStartListener = () -> pulseStartNanos = System.nanoTime();
+	private final Runnable pulseEndListener = () -> metrics.recordPulse(pulseStartNanos, System.nanoTime());
 	
 	// mouse event listeners
 	private double startX, startY;
@@ -71,44 +113,49 @@ public class MoireeController implements Initializable {
 		this.ioHelper = new SavingHelper(resources);
 
 		initMoireePane();
+		initPatternService();
 		initializeTransformationBindings();
 		initMouseHandlers();
+		initMetrics();
+		initSpectrumAnalysis();
+		initFringePrediction();
+		initPngOptions();
 		loadMoireeOptions();
 		
 		recalculateImage();
 	}
 	
 	private void initMoireePane() {
-		// create the effect in order to be able to colorize images
-		Blend blend = new Blend(BlendMode.SRC_ATOP);
-		ColorInput imageColorEffect = new ColorInput();
-		imageColorEffect.widthProperty().bind(imageSettings.imageWidthProperty());
-		imageColorEffect.heightProperty().bind(imageSettings.imageHeightProperty());
-		imageColorEffect.paintProperty().bind(foregroundColorPicker.valueProperty());
-		blend.setTopInput(imageColorEffect);
-		
-		untransformedView.setEffect(blend);
-		transformedView.setEffect(blend);
+		// the foreground color is part of the image pixels, a new color expands the pattern again
+		foregroundColorPicker.valueProperty().addListener(obs -> recalculateImage());
 		
-		untransformedView.imageProperty().bind(imageProperty);
-		transformedView.imageProperty().bind(imageProperty);
+		// only the tiles within the window are shown
+		refiner = new ProgressiveRefiner(metrics, root, untransformedView, transformedView);
 		
 		moireeBackground.fillProperty().bind(backgroundColorPicker.valueProperty());
 	}
 	
+	private void initPatternService() {
+		patternService.setOnSucceeded(ev -> swapPattern(patternService.getValue()));
+		patternService.setOnFailed(ev -> {
+			// allow requesting the failed image again, the previous image stays shown
+			requestedSpec = patternSpec;
+			requestedArgb = patternArgb;
+			SavingHelper.showExceptionAlert(resources.getString("error"), resources.getString("generationErrorMessage"),
+					patternService.getException());
+		});
+	}
+	
 	private void initializeTransformationBindings() {
-		transformedView.rotateProperty().bind(transformationSetupController.rotateProperty());
-		transformedView.translateXProperty().bind(transformationSetupController.translateXProperty());
-		transformedView.translateYProperty().bind(transformationSetupController.translateYProperty());
-		transformedView.scaleXProperty().bind(transformationSetupController.autoScaleXBinding());
-		transformedView.scaleYProperty().bind(transformationSetupController.autoScaleYBinding());
+		transformUpdater = new ViewTransformUpdater(transformationSetupController, transformedView);
 	}
 	
 	private void initMouseHandlers() {
 		// common scaling on scroll
 		moireePane.setOnScroll(ev -> {
-			transformationSetupController.setCommonScale(transformationSetupController.getCommonScale() + ev.getTextDeltaY() / 1000);
-			transformationSetupController.setUseCommonScale(true);
+			refiner.beginInteraction();
+			transformUpdater.commonScaleBy(ev.getTextDeltaY() / 1000);
+			refiner.endInteraction();
 		});
 		// whenever mouse was pressed, remember the start and last coordinates
 		moireePane.setOnMousePressed(ev -> {
@@ -116,8 +163,15 @@ public class MoireeController implements Initializable {
 			this.startY = ev.getY();
 			this.lastX = startX;
 			this.lastY = startY;
+			metrics.beginInteraction();
+			refiner.beginInteraction();
 		});
-		// handle mouse dragging. left: translate, right: rotate, middle: individual scalings
+		moireePane.setOnMouseReleased(ev -> {
+			metrics.endInteraction();
+			refiner.endInteraction();
+		});
+		// handle mouse dragging. left: translate, right: rotate, middle: individual scalings.
+		// changes are collected and applied once per pulse
 		moireePane.setOnMouseDragged(ev -> {
 			double x = ev.getX();
 			double dx = x - lastX;
@@ -127,25 +181,153 @@ public class MoireeController implements Initializable {
 			double dy = y - lastY;
 			lastY = y;
 			
-			Image image = imageProperty.getValue();
+			// nothing to transform before the first pattern was generated
+			if(pattern == null)
+				return;
 			
 			// left dragging: translations
 			if(ev.isPrimaryButtonDown()) {
-				transformationSetupController.setTranslateX(transformationSetupController.getTranslateX() + dx / 10);
-				transformationSetupController.setTranslateY(transformationSetupController.getTranslateY() + dy / 10);
+				transformUpdater.translateBy(dx / 10, dy / 10);
 			}
 			// right dragging: rotation
 			else if(ev.isSecondaryButtonDown()) {
-				double dr = Math.signum(x - untransformedView.getLayoutX() - image.getWidth() / 2) * dy - Math.signum(y - untransformedView.getLayoutY() - image.getHeight() / 2) * dx;
-				transformationSetupController.setRotate(transformationSetupController.getRotate() + dr / 60);
+				double dr = Math.signum(x - untransformedView.getLayoutX() - pattern.getWidth() / 2) * dy - Math.signum(y - untransformedView.getLayoutY() - pattern.getHeight() / 2) * dx;
+				transformUpdater.rotateBy(dr / 60);
 			}
 			// middle dragging: scalings
 			else if(ev.isMiddleButtonDown()) {
-				transformationSetupController.setScaleX(transformationSetupController.getScaleX() + dx * .5 / image.getWidth());
-				transformationSetupController.setScaleY(transformationSetupController.getScaleY() - dy * .5 / image.getHeight());
-				transformationSetupController.setUseCommonScale(false);
+				transformUpdater.scaleBy(dx * .5 / pattern.getWidth(), -dy * .5 / pattern.getHeight());
+			}
+		});
+	}
+	
+	private void initMetrics() {
+		try {
+			metrics.register();
+		} catch(InstanceAlreadyExistsException e) {
+			// another window publishes its metrics, the metrics of this one are only shown in the overlay
+		} catch(JMException e) {
+			throw new IllegalStateException(e);
+		}
+		
+		// the pulses give the pulse duration, and the frame rate during mouse interaction
+		root.sceneProperty().addListener((obs, oldScene, newScene) -> {
+			if(oldScene != null) {
+				oldScene.removePreLayoutPulseListener(pulseStartListener);
+				oldScene.removePostLayoutPulseListener(pulseEndListener);
+			}
+			if(newScene != null) {
+				newScene.addPreLayoutPulseListener(pulseStartListener);
+				newScene.addPostLayoutPulseListener(pulseEndListener);
+			}
+		});
+		
+		metricsOverlayUpdater.setCycleCount(Animation.INDEFINITE);
+		metricsOverlay.visibleProperty().bind(showMetricsCheckBox.selectedProperty());
+		showMetricsCheckBox.selectedProperty().addListener((obs, oldValue, show) -> {
+			if(show) {
+				updateMetricsOverlay();
+				metricsOverlayUpdater.play();
+			} else
+				metricsOverlayUpdater.stop();
+		});
+	}
+	
+	private void initSpectrumAnalysis() {
+		spectrumAnalysisController.setCompositorSource(this::createAnalysisCompositor);
+		// the analysis ignores the colors, only a new transformation changes its result
+		transformUpdater.transformProperty().addListener(obs -> spectrumAnalysisController.requestAnalysis());
+	}
+	
+	private void initFringePrediction() {
+		fringeOverlay.visibleProperty().bind(showFringesCheckBox.selectedProperty());
+		fringeLabel.visibleProperty().bind(showFringesCheckBox.selectedProperty());
+		showFringesCheckBox.selectedProperty().addListener(obs -> updateFringePrediction());
+		transformUpdater.transformProperty().addListener(obs -> updateFringePrediction());
+	}
+	
+	private void initPngOptions() {
+		for(int level = 0; level <= 9; level++)
+			pngCompressionCombobox.getItems().add(level);
+		pngCompressionCombobox.setConverter(new StringConverter<Integer>() {
+			@Override public String toString(Integer object) {
+				if(object == 0)
+					return resources.getString("pngCompressionNone");
+				else if(object == 9)
+					return resources.getString("pngCompressionBest");
+				else
+					return object.toString();
+			}
+			
+			@Override public Integer fromString(String string) {
+				throw new RuntimeException();
 			}
 		});
+		pngFilterCombobox.getItems().addAll(Filter.values());
+		pngFilterCombobox.setConverter(new StringConverter<Filter>() {
+			@Override public String toString(Filter object) {
+				return object.getName(resources);
+			}
+			
+			@Override public Filter fromString(String string) {
+				throw new RuntimeException();
+			}
+		});
+		
+		// new exports use the options selected at the time they are queued
+		InvalidationListener optionsListener = obs -> ioHelper.setPngOptions(new PngOptions(
+				pngCompressionCombobox.getValue(), pngFilterCombobox.getValue(), pngIndexedCheckBox.isSelected()));
+		pngCompressionCombobox.valueProperty().addListener(optionsListener);
+		pngFilterCombobox.valueProperty().addListener(optionsListener);
+		pngIndexedCheckBox.selectedProperty().addListener(optionsListener);
+	}
+	
+	/**
+	 * Predict the fringes of the shown pattern and the current transformation, and draw them if they are shown.
+	 */
+	private void updateFringePrediction() {
+		if(! showFringesCheckBox.isSelected() || patternSpec == null)
+			return;
+		MoireeImageMode mode = patternSpec.getImageMode();
+		MoireeTransform transform = transformUpdater.getTransform();
+		List<PredictedFringe> fringes = FringePredictor.predict(mode, patternSpec.getPixelSize(), transform);
+		fringeOverlay.setFringes(fringes);
+		
+		StringBuilder text = new StringBuilder(resources.getString("fringePredictionTitle"));
+		if(! FringePredictor.isPredictable(mode))
+			text.append('\n').append(String.format(resources.getString("fringePredictionUnsupported"), mode.getName(resources)));
+		else if(fringes.isEmpty() && FringePredictor.isAligned(mode, patternSpec.getPixelSize(), transform))
+			text.append('\n').append(resources.getString("fringePredictionNone"));
+		else if(fringes.isEmpty())
+			text.append('\n').append(resources.getString("fringePredictionTooFine"));
+		int number = 1;
+		for(PredictedFringe fringe : fringes)
+			text.append('\n').append(String.format(resources.getString("fringePrediction"), number++, fringe.getPeriod(), fringe.getAngle()));
+		fringeLabel.setText(text.toString());
+	}
+	
+	/**
+	 * Create a compositor of the image currently shown. The views are smoothed, bilinear sampling resembles them best.
+	 * 
+	 * @return the compositor, or null before the first pattern was generated
+	 */
+	private MoireeCompositor createAnalysisCompositor() {
+		if(pattern == null)
+			return null;
+		return new MoireeCompositor(pattern, transformUpdater.getTransform(), MoireeCompositor.Sampling.BILINEAR,
+				Drawing.toArgb(foregroundColorPicker.getValue()), Drawing.toArgb(backgroundColorPicker.getValue()));
+	}
+	
+	private void updateMetricsOverlay() {
+		String mode = metrics.getLastGenerationMode();
+		metricsOverlay.setText(String.format(resources.getString("metricsOverlay"),
+				metrics.getLastGenerationMillis(), mode == null ? "-" : MoireeImageMode.valueOf(mode).getName(resources),
+				metrics.getLastRecolorMillis(),
+				metrics.getLastExportMillis(),
+				metrics.getAveragePulseMillis(), metrics.getMaxPulseMillis(),
+				metrics.getFramesPerSecond(),
+				metrics.getImageByteSize() / 1e6,
+				metrics.getPatternCacheByteSize() / 1e6));
 	}
 	
 	private void loadMoireeOptions() {
@@ -157,29 +339,57 @@ public class MoireeController implements Initializable {
 		imageSettings.setImageHeight(preferences.getImageHeight(1000));
 		imageSettings.setPixelSize(preferences.getPixelSize(1));
 		imageSettings.setPixelDensity(preferences.getPixelDensity(20));
+		imageSettings.setRandomSeed(preferences.getRandomSeed(new Random().nextLong()));
 
 		transformationSetup.setExpanded(preferences.isTransformationSetupExpanded(true));
 		imagePane.setExpanded(preferences.isImagePaneExpanded(true));
+		showMetricsCheckBox.setSelected(preferences.isMetricsOverlayShown(false));
+		showFringesCheckBox.setSelected(preferences.isFringesShown(false));
+		spectrumAnalysisController.setExpanded(preferences.isSpectrumPaneExpanded(false));
+		
+		// PNG export, 6 is the default level of deflate
+		pngCompressionCombobox.setValue(Math.max(0, Math.min(9, preferences.getPngCompressionLevel(6))));
+		int filterIndex = preferences.getPngFilterIndex(Filter.AUTOMATIC.ordinal());
+		pngFilterCombobox.setValue(filterIndex >= 0 && filterIndex < Filter.values().length ? Filter.values()[filterIndex] : Filter.AUTOMATIC);
+		pngIndexedCheckBox.setSelected(preferences.isPngIndexed(true));
 
 		foregroundColorPicker.setValue(preferences.getForegroundColor(Color.BLACK));
 		backgroundColorPicker.setValue(preferences.getBackgroundColor(Color.WHITE));
 	}
 	
 	/**
-	 * Create a new image.
+	 * Start creating a new pattern image in the background. The current image stays visible until the new one is complete.
 	 */
 	private void recalculateImage() {
-		WritableImage image = imageProperty.getValue();
+		ImageSpec spec = ImageSpec.of(imageSettings);
+		int foregroundArgb = Drawing.toArgb(foregroundColorPicker.getValue());
+		if(spec.equals(requestedSpec) && foregroundArgb == requestedArgb)
+			return;
+		requestedSpec = spec;
+		requestedArgb = foregroundArgb;
 		
-		int width = imageSettings.getImageWidth();
-		int height = imageSettings.getImageHeight();
-		
-		if(image == null || image.getWidth() != width || image.getHeight() != height) {
-			image = new WritableImage(width, height);
-			imageProperty.setValue(image);
+		// the image is shown already, only stop generating a different one
+		if(spec.equals(patternSpec) && foregroundArgb == patternArgb) {
+			patternService.cancel();
+			return;
 		}
+		patternService.generate(spec, foregroundArgb);
+	}
+	
+	/**
+	 * Display a generated pattern. Its preview is shown at once, the full resolution image is refined in the following pulses.
+	 * 
+	 * @param generated the new pattern and its preview
+	 */
+	private void swapPattern(PatternService.GeneratedPattern generated) {
+		pattern = generated.getPattern();
+		patternSpec = generated.getSpec();
+		patternArgb = generated.getForegroundArgb();
+		refiner.show(pattern, patternArgb, generated.getPreview());
 		
-		imageSettings.getImageMode().getImageDrawer().drawToImage(imageProperty.getValue(), imageSettings);
+		metrics.setPatternCacheByteSize(patternService.getCache().getByteSize());
+		spectrumAnalysisController.requestAnalysis();
+		updateFringePrediction();
 	}
 	
 
@@ -212,23 +422,79 @@ public class MoireeController implements Initializable {
 		}
 	}
 	
+	@FXML private void onSaveSweepClicked(ActionEvent ev) {
+		Node root;
+		SweepSetupController controller;
+		try {
+			FXMLLoader loader = new FXMLLoader(getClass().getResource("SweepSetup.fxml"));
+			loader.setResources(ResourceBundle.getBundle("de.lennartmeinhardt.moiree.bundles.Moiree"));
+			root = loader.load();
+			controller = loader.getController();
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		Dialog<ButtonType> sweepSetupDialog = new Dialog<>();
+		sweepSetupDialog.setTitle(resources.getString("sweepSetupTitle"));
+		sweepSetupDialog.setHeaderText(resources.getString("sweepSetupTitle"));
+		sweepSetupDialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+		sweepSetupDialog.getDialogPane().setContent(root);
+		sweepSetupDialog.getDialogPane().getStylesheets().add(getClass().getResource("application.css").toExternalForm());
+		sweepSetupDialog.getDialogPane().lookupButton(ButtonType.OK).disableProperty().bind(controller.allInputValidBinding().not());
+		
+		controller.loadFromTransform(transformationSetupController.getTransform());
+		
+		Optional<ButtonType> result = sweepSetupDialog.showAndWait();
+		// the pattern is missing until the first generation has finished
+		if(result.get() == ButtonType.OK && pattern != null) {
+			// the frames are rendered from the current pattern, which is never changed but replaced
+			MoireeCompositor compositor = new MoireeCompositor(pattern, MoireeTransform.IDENTITY, MoireeCompositor.Sampling.NEAREST,
+					Drawing.toArgb(foregroundColorPicker.getValue()), Drawing.toArgb(backgroundColorPicker.getValue()));
+			SweepExporter exporter = new SweepExporter(compositor, controller.getSweep(), ioHelper.getPngOptions());
+			ioHelper.saveSweep(this.root.getScene().getWindow(), exporter, controller.getFormat(), controller.getFrameDelayMillis())
+					.ifPresent(this::showExportProgress);
+		}
+	}
+	
 	@FXML private void onSaveClicked(ActionEvent e) {
-		Window window = root.getScene().getWindow();
-		Image imageToSave = getSaveImage();
-		root.setDisable(true);
-		ioHelper.saveImage(window, imageToSave);
-		root.setDisable(false);
+		// the pattern is missing until the first generation has finished
+		if(pattern == null)
+			return;
+		// the image is rendered from the pattern while it is written, in the background
+		MoireeCompositor compositor = new MoireeCompositor(pattern, transformationSetupController.getTransform(), MoireeCompositor.Sampling.NEAREST,
+				Drawing.toArgb(foregroundColorPicker.getValue()), Drawing.toArgb(backgroundColorPicker.getValue()));
+		ioHelper.saveImage(root.getScene().getWindow(), compositor).ifPresent(this::showExportProgress);
 	}
 	
-	private Image getSaveImage() {
-		SnapshotParameters params = new SnapshotParameters();
-		params.setFill(backgroundColorPicker.getValue());
-		WritableImage img = moireePane.snapshot(params, null);
-		return img;
+	/**
+	 * Show the progress of an export until it is done.
+	 * 
+	 * @param task the export to show
+	 */
+	private void showExportProgress(Task<?> task) {
+		ExportProgressView progressView = new ExportProgressView(task, resources);
+		exportsBox.getChildren().add(progressView);
+		long[] runningSince = new long[1];
+		task.stateProperty().addListener((obs, oldState, newState) -> {
+			if(newState == Worker.State.RUNNING)
+				runningSince[0] = System.nanoTime();
+			else if(newState == Worker.State.SUCCEEDED)
+				metrics.recordExport(System.nanoTime() - runningSince[0]);
+			if(task.isDone())
+				exportsBox.getChildren().remove(progressView);
+		});
 	}
 	
 	public void onDispose() {
 		storeMoireeOptions();
+		metricsOverlayUpdater.stop();
+		try {
+			metrics.unregister();
+		} catch(InstanceNotFoundException e) {
+			// unregistered by someone else meanwhile
+		} catch(JMException e) {
+			throw new IllegalStateException(e);
+		}
 	}
 	
 	private void storeMoireeOptions() {
@@ -240,9 +506,17 @@ public class MoireeController implements Initializable {
 		preferences.setImageHeight(imageSettings.getImageHeight());
 		preferences.setPixelSize(imageSettings.getPixelSize());
 		preferences.setPixelDensity(imageSettings.getPixelDensity());
+		preferences.setRandomSeed(imageSettings.getRandomSeed());
 
 		preferences.setTransformationSetupExpanded(transformationSetup.isExpanded());
 		preferences.setImagePaneExpanded(imagePane.isExpanded());
+		preferences.setMetricsOverlayShown(showMetricsCheckBox.isSelected());
+		preferences.setFringesShown(showFringesCheckBox.isSelected());
+		preferences.setSpectrumPaneExpanded(spectrumAnalysisController.isExpanded());
+		
+		preferences.setPngCompressionLevel(pngCompressionCombobox.getValue());
+		preferences.setPngFilterIndex(pngFilterCombobox.getValue().ordinal());
+		preferences.setPngIndexed(pngIndexedCheckBox.isSelected());
 
 		preferences.setBackgroundColor(backgroundColorPicker.getValue());
 		preferences.setForegroundColor(foregroundColorPicker.getValue());
@@ -1,8 +1,13 @@
 package de.lennartmeinhardt.moiree;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
-import javafx.scene.image.WritableImage;
+import de.lennartmeinhardt.moiree.FlightRecorderEvents.PatternGenerationEvent;
 
 /**
  * Object that combines image drawing with internal names (to be used to get localized strings from {@link ResourceBundle}).
@@ -12,25 +17,51 @@ import javafx.scene.image.WritableImage;
  */
 public enum MoireeImageMode {
 
-	RANDOM("modeRandom", Drawing::drawRandomPixelsToImage),
-	SQUARES("modeSquares", Drawing::drawCheckerboardToImage),
-	TRIANGLES("modeTriangles", Drawing::drawTrianglesToImage),
-	HORIZONTAL_LINES("modeHorizontalLines", Drawing::drawHorizontalLinesToImage);
+	RANDOM("modeRandom", Drawing::drawRandomPixelsToRaster, Drawing::createRandomPixelsSampler),
+	SQUARES("modeSquares", Drawing::drawCheckerboardToRaster, Drawing::createCheckerboardSampler, Drawing::getCheckerboardPeriod, Drawing::getCheckerboardPeriod),
+	TRIANGLES("modeTriangles", Drawing::drawTrianglesToRaster, Drawing::createTrianglesSampler, ImageSettings::getImageWidth, Drawing::getTrianglesPeriod),
+	HORIZONTAL_LINES("modeHorizontalLines", Drawing::drawHorizontalLinesToRaster, Drawing::createHorizontalLinesSampler, s -> 1, Drawing::getHorizontalLinesPeriod),
+	DIAGONAL_LINES("modeDiagonalLines", Drawing::drawDiagonalLinesToRaster, Drawing::createDiagonalLinesSampler, Drawing::getDiagonalLinesPeriod, Drawing::getDiagonalLinesPeriod);
+	
+	// period tiles of more bytes are drawn to a pattern file instead of the heap
+	public static final long MAPPED_TILE_BYTES = 64L << 20;
 	
 	// the internal name
 	private final String nameKey;
 	// the object that can draw images
 	private final ImageDrawer imageDrawer;
+	// creates analytic samplers of the pattern
+	private final Function<ImageSettings, PatternSampler> samplerFactory;
+	// the size of a period tile, the image size for non-periodic modes
+	private final ToIntFunction<ImageSettings> periodWidth;
+	private final ToIntFunction<ImageSettings> periodHeight;
+	
 	
+	/**
+	 * Create a new non-periodic {@link MoireeImageMode} with given internal name, image drawer and sampler factory.
+	 * @param nameKey
+	 * @param imageDrawer
+	 * @param samplerFactory
+	 */
+	private MoireeImageMode(String nameKey, ImageDrawer imageDrawer, Function<ImageSettings, PatternSampler> samplerFactory) {
+		this(nameKey, imageDrawer, samplerFactory, ImageSettings::getImageWidth, ImageSettings::getImageHeight);
+	}
 	
 	/**
-	 * Create a new {@link MoireeImageMode} with given internal name and image drawer.
+	 * Create a new periodic {@link MoireeImageMode} with given internal name, image drawer, sampler factory and period.
 	 * @param nameKey
 	 * @param imageDrawer
+	 * @param samplerFactory
+	 * @param periodWidth
+	 * @param periodHeight
 	 */
-	private MoireeImageMode(String nameKey, ImageDrawer imageDrawer) {
+	private MoireeImageMode(String nameKey, ImageDrawer imageDrawer, Function<ImageSettings, PatternSampler> samplerFactory,
+			ToIntFunction<ImageSettings> periodWidth, ToIntFunction<ImageSettings> periodHeight) {
 		this.nameKey = nameKey;
 		this.imageDrawer = imageDrawer;
+		this.samplerFactory = samplerFactory;
+		this.periodWidth = periodWidth;
+		this.periodHeight = periodHeight;
 	}
 	
 	
@@ -53,6 +84,77 @@ public enum MoireeImageMode {
 		return imageDrawer;
 	}
 	
+	/**
+	 * Create the pattern for given image settings on the heap. Only a single period tile is drawn,
+	 * which is repeated by a {@link TiledRaster} if it is smaller than the image.
+	 * 
+	 * @param settings the image settings
+	 * @return the pattern of the settings' image size
+	 */
+	public PatternRaster createRaster(ImageSettings settings) {
+		return createRaster(settings, null);
+	}
+	
+	/**
+	 * Create the pattern for given image settings, like {@link #createRaster(ImageSettings)}. Period tiles of more than
+	 * {@link #MAPPED_TILE_BYTES} bytes are taken from a {@link PatternFileCache}: they are mapped from the cached file
+	 * if there is one, and drawn to a new file otherwise.
+	 * 
+	 * @param settings the image settings
+	 * @param fileCache the cache of large tiles, or null to draw all tiles on the heap
+	 * @return the pattern of the settings' image size
+	 * @throws UncheckedIOException if the pattern file cannot be read or written
+	 * @throws CancellationException if the calling thread was interrupted while drawing
+	 */
+	public PatternRaster createRaster(ImageSettings settings, PatternFileCache fileCache) throws UncheckedIOException, CancellationException {
+		PatternGenerationEvent event = new PatternGenerationEvent();
+		event.begin();
+		int width = settings.getImageWidth();
+		int height = settings.getImageHeight();
+		int tileWidth = Math.min(width, periodWidth.applyAsInt(settings));
+		int tileHeight = Math.min(height, periodHeight.applyAsInt(settings));
+		
+		PatternRaster tile;
+		if(fileCache != null && MappedRaster.getByteSize(tileWidth, tileHeight) > MAPPED_TILE_BYTES) {
+			try {
+				tile = fileCache.getOrDraw(ImageSpec.of(settings), tileWidth, tileHeight, raster -> imageDrawer.drawToRaster(raster, settings));
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else {
+			BitRaster bitRaster = new BitRaster(tileWidth, tileHeight);
+			imageDrawer.drawToRaster(bitRaster, settings);
+			tile = bitRaster;
+		}
+		PatternRaster raster = tileWidth == width && tileHeight == height ? tile : new TiledRaster(tile, width, height);
+		
+		event.end();
+		if(event.shouldCommit()) {
+			event.mode = name();
+			event.width = width;
+			event.height = height;
+			event.pixelSize = settings.getPixelSize();
+			event.tileWidth = tileWidth;
+			event.tileHeight = tileHeight;
+			event.rasterBytes = raster.getByteSize();
+			event.mapped = tile instanceof MappedRaster;
+			event.commit();
+		}
+		return raster;
+	}
+	
+	/**
+	 * Create a sampler that evaluates the pattern of given image settings in closed form, without drawing it.
+	 * At pixel centers the sampler agrees with the raster created by {@link #createRaster(ImageSettings)}.
+	 * The sampler is not bounded by the image size.
+	 * 
+	 * @param settings the image settings
+	 * @return the analytic sampler
+	 */
+	public PatternSampler createSampler(ImageSettings settings) {
+		return samplerFactory.apply(settings);
+	}
+	
 	
 	/**
 	 * Get the enum object of given index.
@@ -81,12 +183,12 @@ public enum MoireeImageMode {
 	
 	
 	/**
-	 * An object that can draw a Moir image.
+	 * An object that can draw a Moir image to a {@link WritablePatternRaster}.
 	 * 
 	 * @author Lennart Meinhardt
 	 */
 	@FunctionalInterface
 	public static interface ImageDrawer {
-		void drawToImage(WritableImage destination, ImageSettings settings);
+		void drawToRaster(WritablePatternRaster destination, ImageSettings settings);
 	}
 }
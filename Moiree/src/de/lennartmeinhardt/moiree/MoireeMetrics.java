@@ -0,0 +1,263 @@
+package de.lennartmeinhardt.moiree;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects performance measurements of the application: pattern generation per image mode, recoloring,
+ * exports, the scene's part of the FX pulse and the frame rate during mouse interaction.
+ * <p>
+ * Measurements may be recorded from any thread. They can be shown in the window and are published as
+ * {@value #OBJECT_NAME} on the platform MBean server.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class MoireeMetrics implements MoireeMetricsMXBean {
+	
+	public static final String OBJECT_NAME = "de.lennartmeinhardt.moiree:type=Metrics";
+	
+	// pulses further apart than this are pauses of the interaction, not frames
+	private static final long FRAME_GAP_NANOS = 250_000_000L;
+	// weight of the newest frame in the smoothed frame time
+	private static final double FRAME_SMOOTHING = .1;
+	
+	private final Timing generationTiming = new Timing();
+	private final Map<MoireeImageMode, Timing> modeTimings = new EnumMap<>(MoireeImageMode.class);
+	private volatile MoireeImageMode lastGenerationMode;
+	private final Timing recolorTiming = new Timing();
+	private final Timing exportTiming = new Timing();
+	private final Timing pulseTiming = new Timing();
+	
+	// frame rate, only pulses during an interaction are frames
+	private volatile boolean interacting;
+	private long lastPulseNanos;
+	private volatile double frameNanos;
+	
+	private volatile long imageByteSize;
+	private volatile long patternCacheByteSize;
+	
+	private ObjectName registeredName;
+	
+	
+	/**
+	 * Publish these metrics on the platform MBean server.
+	 * 
+	 * @throws JMException if registering fails, for example because metrics are registered already
+	 */
+	public synchronized void register() throws JMException {
+		if(registeredName != null)
+			return;
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		registeredName = name;
+	}
+	
+	/**
+	 * Remove these metrics from the platform MBean server, if registered.
+	 * 
+	 * @throws JMException if unregistering fails
+	 */
+	public synchronized void unregister() throws JMException {
+		if(registeredName == null)
+			return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if(server.isRegistered(registeredName))
+			server.unregisterMBean(registeredName);
+		registeredName = null;
+	}
+	
+	
+	/**
+	 * Record the time it took to generate a pattern.
+	 * 
+	 * @param mode the image mode of the pattern
+	 * @param nanos the duration
+	 */
+	public void recordGeneration(MoireeImageMode mode, long nanos) {
+		generationTiming.record(nanos);
+		Timing modeTiming;
+		synchronized(modeTimings) {
+			modeTiming = modeTimings.computeIfAbsent(mode, m -> new Timing());
+		}
+		modeTiming.record(nanos);
+		lastGenerationMode = mode;
+	}
+	
+	/**
+	 * Record the time it took to expand a pattern into its colored image.
+	 * 
+	 * @param nanos the duration
+	 */
+	public void recordRecolor(long nanos) {
+		recolorTiming.record(nanos);
+	}
+	
+	/**
+	 * Record the time it took to export an image or a sweep.
+	 * 
+	 * @param nanos the duration
+	 */
+	public void recordExport(long nanos) {
+		exportTiming.record(nanos);
+	}
+	
+	/**
+	 * Record the scene's part of a pulse. Must be called on the FX thread.
+	 * 
+	 * @param startNanos the start of the pulse
+	 * @param endNanos the end of the pulse
+	 */
+	public void recordPulse(long startNanos, long endNanos) {
+		pulseTiming.record(endNanos - startNanos);
+		if(interacting) {
+			long interval = startNanos - lastPulseNanos;
+			if(lastPulseNanos != 0 && interval < FRAME_GAP_NANOS) {
+				double smoothed = frameNanos;
+				frameNanos = smoothed == 0 ? interval : smoothed + FRAME_SMOOTHING * (interval - smoothed);
+			}
+		}
+		lastPulseNanos = startNanos;
+	}
+	
+	/**
+	 * Start measuring the frame rate of a mouse interaction. Must be called on the FX thread.
+	 */
+	public void beginInteraction() {
+		interacting = true;
+		frameNanos = 0;
+	}
+	
+	/**
+	 * Stop measuring the frame rate. The rate of the interaction is kept until the next one begins.
+	 * Must be called on the FX thread.
+	 */
+	public void endInteraction() {
+		interacting = false;
+	}
+	
+	public void setImageByteSize(long imageByteSize) {
+		this.imageByteSize = imageByteSize;
+	}
+	
+	public void setPatternCacheByteSize(long patternCacheByteSize) {
+		this.patternCacheByteSize = patternCacheByteSize;
+	}
+	
+	
+	@Override public long getGenerationCount() {
+		return generationTiming.getCount();
+	}
+	@Override public double getLastGenerationMillis() {
+		return generationTiming.getLastMillis();
+	}
+	@Override public String getLastGenerationMode() {
+		MoireeImageMode mode = lastGenerationMode;
+		return mode == null ? null : mode.name();
+	}
+	@Override public double getAverageGenerationMillis() {
+		return generationTiming.getAverageMillis();
+	}
+	@Override public Map<String, Double> getAverageGenerationMillisByMode() {
+		Map<String, Double> averages = new TreeMap<>();
+		synchronized(modeTimings) {
+			modeTimings.forEach((mode, timing) -> averages.put(mode.name(), timing.getAverageMillis()));
+		}
+		return averages;
+	}
+	
+	@Override public long getRecolorCount() {
+		return recolorTiming.getCount();
+	}
+	@Override public double getLastRecolorMillis() {
+		return recolorTiming.getLastMillis();
+	}
+	@Override public double getAverageRecolorMillis() {
+		return recolorTiming.getAverageMillis();
+	}
+	
+	@Override public long getExportCount() {
+		return exportTiming.getCount();
+	}
+	@Override public double getLastExportMillis() {
+		return exportTiming.getLastMillis();
+	}
+	@Override public double getAverageExportMillis() {
+		return exportTiming.getAverageMillis();
+	}
+	
+	@Override public double getLastPulseMillis() {
+		return pulseTiming.getLastMillis();
+	}
+	@Override public double getAveragePulseMillis() {
+		return pulseTiming.getAverageMillis();
+	}
+	@Override public double getMaxPulseMillis() {
+		return pulseTiming.getMaxMillis();
+	}
+	@Override public double getFramesPerSecond() {
+		double nanos = frameNanos;
+		return nanos == 0 ? 0 : 1e9 / nanos;
+	}
+	
+	@Override public long getImageByteSize() {
+		return imageByteSize;
+	}
+	@Override public long getPatternCacheByteSize() {
+		return patternCacheByteSize;
+	}
+	
+	@Override public void reset() {
+		generationTiming.reset();
+		synchronized(modeTimings) {
+			modeTimings.clear();
+		}
+		lastGenerationMode = null;
+		recolorTiming.reset();
+		exportTiming.reset();
+		pulseTiming.reset();
+		frameNanos = 0;
+	}
+	
+	
+	/**
+	 * Count, sum, maximum and latest value of a series of durations.
+	 */
+	private static final class Timing {
+		
+		private long count;
+		private long totalNanos;
+		private long lastNanos;
+		private long maxNanos;
+		
+		
+		synchronized void record(long nanos) {
+			count++;
+			totalNanos += nanos;
+			lastNanos = nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+		
+		synchronized void reset() {
+			count = totalNanos = lastNanos = maxNanos = 0;
+		}
+		
+		synchronized long getCount() {
+			return count;
+		}
+		synchronized double getLastMillis() {
+			return lastNanos / 1e6;
+		}
+		synchronized double getAverageMillis() {
+			return count == 0 ? 0 : totalNanos / 1e6 / count;
+		}
+		synchronized double getMaxMillis() {
+			return maxNanos / 1e6;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package de.lennartmeinhardt.moiree;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link MoireeMetrics}, published through JMX. Durations are given in milliseconds,
+ * averages are taken over all measurements since the start or the last reset.
+ * 
+ * @author Lennart Meinhardt
+ */
+public interface MoireeMetricsMXBean {
+	
+	long getGenerationCount();
+	double getLastGenerationMillis();
+	String getLastGenerationMode();
+	double getAverageGenerationMillis();
+	/**
+	 * @return the average generation time of each image mode that was generated at least once
+	 */
+	Map<String, Double> getAverageGenerationMillisByMode();
+	
+	long getRecolorCount();
+	double getLastRecolorMillis();
+	double getAverageRecolorMillis();
+	
+	long getExportCount();
+	double getLastExportMillis();
+	double getAverageExportMillis();
+	
+	double getLastPulseMillis();
+	double getAveragePulseMillis();
+	double getMaxPulseMillis();
+	/**
+	 * @return the frame rate of the current or last mouse interaction
+	 */
+	double getFramesPerSecond();
+	
+	/**
+	 * @return the off-heap bytes of the preview, the full resolution image and a refinement in progress
+	 */
+	long getImageByteSize();
+	long getPatternCacheByteSize();
+	
+	/**
+	 * Forget all measurements.
+	 */
+	void reset();
+}
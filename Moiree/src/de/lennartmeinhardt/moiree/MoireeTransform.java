@@ -0,0 +1,138 @@
+package de.lennartmeinhardt.moiree;
+
+/**
+ * Immutable affine transformation of the upper Moir image. Rotation and scaling are done
+ * around a pivot, the image center, followed by the translation. This is the order JavaFX applies node transforms in.
+ * 
+ * @author Lennart Meinhardt
+ */
+public final class MoireeTransform {
+	
+	public static final MoireeTransform IDENTITY = new MoireeTransform(0, 0, 0, 1, 1);
+	
+	// rotation in degrees
+	private final double rotate;
+	private final double translateX;
+	private final double translateY;
+	private final double scaleX;
+	private final double scaleY;
+	
+	
+	/**
+	 * Create a new {@link MoireeTransform}.
+	 * 
+	 * @param rotate the rotation in degrees
+	 * @param translateX the x translation in pixels
+	 * @param translateY the y translation in pixels
+	 * @param scaleX the x scaling
+	 * @param scaleY the y scaling
+	 */
+	public MoireeTransform(double rotate, double translateX, double translateY, double scaleX, double scaleY) {
+		this.rotate = rotate;
+		this.translateX = translateX;
+		this.translateY = translateY;
+		this.scaleX = scaleX;
+		this.scaleY = scaleY;
+	}
+	
+	
+	public double getRotate() {
+		return rotate;
+	}
+	public double getTranslateX() {
+		return translateX;
+	}
+	public double getTranslateY() {
+		return translateY;
+	}
+	public double getScaleX() {
+		return scaleX;
+	}
+	public double getScaleY() {
+		return scaleY;
+	}
+	
+	/**
+	 * Interpolate linearly between this and another transformation, parameter by parameter.
+	 * 
+	 * @param end the transformation at <code>t = 1</code>
+	 * @param t the interpolation position, 0 for this transformation
+	 * @return the interpolated transformation
+	 */
+	public MoireeTransform interpolate(MoireeTransform end, double t) {
+		return new MoireeTransform(
+				rotate + (end.rotate - rotate) * t,
+				translateX + (end.translateX - translateX) * t,
+				translateY + (end.translateY - translateY) * t,
+				scaleX + (end.scaleX - scaleX) * t,
+				scaleY + (end.scaleY - scaleY) * t);
+	}
+	
+	/**
+	 * Get the transformation matrix for given pivot. The result contains <code>{mxx, mxy, tx, myx, myy, ty}</code>,
+	 * so a point (x, y) is mapped to (mxx * x + mxy * y + tx, myx * x + myy * y + ty).
+	 * 
+	 * @param pivotX the x coordinate of the rotation and scaling center
+	 * @param pivotY the y coordinate of the rotation and scaling center
+	 * @return the matrix coefficients
+	 */
+	public double[] getMatrix(double pivotX, double pivotY) {
+		double radians = Math.toRadians(rotate);
+		double cos = Math.cos(radians);
+		double sin = Math.sin(radians);
+		double mxx = cos * scaleX;
+		double mxy = -sin * scaleY;
+		double myx = sin * scaleX;
+		double myy = cos * scaleY;
+		double tx = pivotX + translateX - mxx * pivotX - mxy * pivotY;
+		double ty = pivotY + translateY - myx * pivotX - myy * pivotY;
+		return new double[] {mxx, mxy, tx, myx, myy, ty};
+	}
+	
+	/**
+	 * Get the matrix of the inverse transformation for given pivot, in the format of {@link #getMatrix(double, double)}.
+	 * 
+	 * @param pivotX the x coordinate of the rotation and scaling center
+	 * @param pivotY the y coordinate of the rotation and scaling center
+	 * @return the inverse matrix coefficients
+	 * @throws IllegalStateException if a scaling is zero
+	 */
+	public double[] getInverseMatrix(double pivotX, double pivotY) throws IllegalStateException {
+		double[] m = getMatrix(pivotX, pivotY);
+		double determinant = m[0] * m[4] - m[1] * m[3];
+		if(determinant == 0)
+			throw new IllegalStateException("Transformation is not invertible");
+		double ixx = m[4] / determinant;
+		double ixy = -m[1] / determinant;
+		double iyx = -m[3] / determinant;
+		double iyy = m[0] / determinant;
+		return new double[] {ixx, ixy, -ixx * m[2] - ixy * m[5], iyx, iyy, -iyx * m[2] - iyy * m[5]};
+	}
+	
+	@Override public boolean equals(Object obj) {
+		if(this == obj)
+			return true;
+		if(! (obj instanceof MoireeTransform))
+			return false;
+		MoireeTransform other = (MoireeTransform) obj;
+		return Double.compare(rotate, other.rotate) == 0
+				&& Double.compare(translateX, other.translateX) == 0
+				&& Double.compare(translateY, other.translateY) == 0
+				&& Double.compare(scaleX, other.scaleX) == 0
+				&& Double.compare(scaleY, other.scaleY) == 0;
+	}
+	
+	@Override public int hashCode() {
+		int hash = Double.hashCode(rotate);
+		hash = 31 * hash + Double.hashCode(translateX);
+		hash = 31 * hash + Double.hashCode(translateY);
+		hash = 31 * hash + Double.hashCode(scaleX);
+		hash = 31 * hash + Double.hashCode(scaleY);
+		return hash;
+	}
+	
+	@Override public String toString() {
+		return "MoireeTransform[rotate=" + rotate + ", translateX=" + translateX + ", translateY=" + translateY
+				+ ", scaleX=" + scaleX + ", scaleY=" + scaleY + "]";
+	}
+}
@@ -0,0 +1,182 @@
+package de.lennartmeinhardt.moiree;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe cache of generated patterns, keyed by their {@link ImageSpec}.
+ * <p>
+ * Patterns are held strongly up to a byte budget, the least recently used ones are evicted first.
+ * Evicted patterns, and those larger than the whole budget, are kept softly reachable,
+ * so they can still be found as long as the garbage collector does not need their memory.
+ * <p>
+ * Patterns backed by a {@link MappedRaster} do not hold their pixels on the heap and are not charged against the budget.
+ * They are kept weakly reachable, so they are found as long as they are in use, and the size of their files
+ * is left to the {@link PatternFileCache}.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class PatternCache {
+	
+	public static final long DEFAULT_BYTE_BUDGET = 128L << 20;
+	
+	private final long byteBudget;
+	// strongly held patterns in access order, least recently used first
+	private final LinkedHashMap<ImageSpec, PatternRaster> patterns = new LinkedHashMap<>(16, .75f, true);
+	// evicted patterns
+	private final Map<ImageSpec, SoftPattern> overflow = new HashMap<>();
+	// patterns backed by files
+	private final Map<ImageSpec, WeakReference<PatternRaster>> mappedPatterns = new HashMap<>();
+	// receives the cleared overflow references
+	private final ReferenceQueue<PatternRaster> clearedPatterns = new ReferenceQueue<>();
+	
+	// byte size of all strongly held patterns, all on the heap
+	private long byteSize;
+	
+	
+	/**
+	 * Create a new {@link PatternCache} with the default byte budget.
+	 */
+	public PatternCache() {
+		this(DEFAULT_BYTE_BUDGET);
+	}
+	
+	/**
+	 * Create a new {@link PatternCache}.
+	 * 
+	 * @param byteBudget the maximum byte size of all strongly held patterns
+	 */
+	public PatternCache(long byteBudget) {
+		if(byteBudget < 0)
+			throw new IllegalArgumentException("Invalid byte budget " + byteBudget);
+		this.byteBudget = byteBudget;
+	}
+	
+	
+	public long getByteBudget() {
+		return byteBudget;
+	}
+	public synchronized long getByteSize() {
+		return byteSize;
+	}
+	
+	/**
+	 * Get a cached pattern. A pattern found in the overflow becomes strongly held again.
+	 * 
+	 * @param spec the spec of the pattern
+	 * @return the pattern, or null if it is not cached
+	 */
+	public synchronized PatternRaster get(ImageSpec spec) {
+		removeClearedPatterns();
+		PatternRaster pattern = patterns.get(spec);
+		if(pattern != null)
+			return pattern;
+		
+		WeakReference<PatternRaster> mappedPattern = mappedPatterns.get(spec);
+		pattern = mappedPattern == null ? null : mappedPattern.get();
+		if(pattern != null)
+			return pattern;
+		
+		SoftPattern softPattern = overflow.remove(spec);
+		pattern = softPattern == null ? null : softPattern.get();
+		if(pattern != null)
+			put(spec, pattern);
+		return pattern;
+	}
+	
+	/**
+	 * Add a pattern as the most recently used one, evicting the least recently used patterns to the overflow
+	 * until the budget is kept. Patterns backed by files are only referenced.
+	 * 
+	 * @param spec the spec of the pattern
+	 * @param pattern the pattern
+	 */
+	public synchronized void put(ImageSpec spec, PatternRaster pattern) {
+		removeClearedPatterns();
+		remove(spec);
+		if(isMapped(pattern)) {
+			mappedPatterns.values().removeIf(reference -> reference.get() == null);
+			mappedPatterns.put(spec, new WeakReference<>(pattern));
+			return;
+		}
+		if(pattern.getByteSize() > byteBudget) {
+			overflow.put(spec, new SoftPattern(spec, pattern, clearedPatterns));
+			return;
+		}
+		
+		patterns.put(spec, pattern);
+		byteSize += pattern.getByteSize();
+		Iterator<Map.Entry<ImageSpec, PatternRaster>> leastRecentlyUsed = patterns.entrySet().iterator();
+		while(byteSize > byteBudget) {
+			Map.Entry<ImageSpec, PatternRaster> evicted = leastRecentlyUsed.next();
+			leastRecentlyUsed.remove();
+			byteSize -= evicted.getValue().getByteSize();
+			overflow.put(evicted.getKey(), new SoftPattern(evicted.getKey(), evicted.getValue(), clearedPatterns));
+		}
+	}
+	
+	/**
+	 * Remove a pattern from the cache.
+	 * 
+	 * @param spec the spec of the pattern
+	 */
+	public synchronized void remove(ImageSpec spec) {
+		PatternRaster removed = patterns.remove(spec);
+		if(removed != null)
+			byteSize -= removed.getByteSize();
+		overflow.remove(spec);
+		mappedPatterns.remove(spec);
+	}
+	
+	/**
+	 * Remove all patterns.
+	 */
+	public synchronized void clear() {
+		patterns.clear();
+		overflow.clear();
+		mappedPatterns.clear();
+		byteSize = 0;
+	}
+	
+	/**
+	 * Check if a pattern is backed by a file, also as the tile of a {@link TiledRaster}.
+	 */
+	private static boolean isMapped(PatternRaster pattern) {
+		if(pattern instanceof TiledRaster)
+			pattern = ((TiledRaster) pattern).getTile();
+		return pattern instanceof MappedRaster;
+	}
+	
+	/**
+	 * Forget the overflow entries whose patterns were collected.
+	 */
+	private void removeClearedPatterns() {
+		Reference<? extends PatternRaster> cleared;
+		while((cleared = clearedPatterns.poll()) != null) {
+			SoftPattern softPattern = (SoftPattern) cleared;
+			// the entry may have been replaced since
+			overflow.remove(softPattern.spec, softPattern);
+		}
+	}
+	
+	
+	/**
+	 * Soft reference to an evicted pattern that remembers its spec.
+	 */
+	private static class SoftPattern extends SoftReference<PatternRaster> {
+		
+		private final ImageSpec spec;
+		
+		
+		private SoftPattern(ImageSpec spec, PatternRaster pattern, ReferenceQueue<PatternRaster> queue) {
+			super(pattern, queue);
+			this.spec = spec;
+		}
+	}
+}
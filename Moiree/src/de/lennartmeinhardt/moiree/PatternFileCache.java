@@ -0,0 +1,237 @@
+package de.lennartmeinhardt.moiree;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * Cache of large patterns in memory-mapped files, see {@link MappedRaster}. The files stay in a directory
+ * across sessions, so a pattern is drawn only once and just mapped again when it is used later.
+ * <p>
+ * The files are named after the {@link ImageSpec} of their pattern. A pattern is drawn to a temporary file
+ * that is renamed when it is complete, so a file of that name always holds a complete pattern,
+ * even if several sessions draw the same pattern at once. The least recently used files are deleted
+ * when the files exceed a byte budget.
+ * <p>
+ * Files mapped by a raster of this cache are not deleted while the raster is reachable. Files mapped by other sessions
+ * stay readable to them when they are deleted or replaced on POSIX systems, but on Windows deleting or replacing
+ * a mapped file fails. Such files are kept and deleted by a later pass, and a pattern whose file cannot be replaced
+ * stays mapped from its temporary file.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class PatternFileCache {
+	
+	public static final long DEFAULT_BYTE_BUDGET = 8L << 30;
+	
+	private static final String FILE_SUFFIX = ".raster";
+	private static final String PART_SUFFIX = ".part";
+	// age of temporary files left behind by ended sessions
+	private static final long STALE_PART_MILLIS = 24L * 60 * 60 * 1000;
+	
+	private final Path directory;
+	private final long byteBudget;
+	// the files mapped by rasters of this cache, a file is in use as long as its raster is reachable
+	private final Map<Path, Reference<MappedRaster>> mappedFiles = new HashMap<>();
+	// temporary files of this cache that could not be deleted yet
+	private final Set<Path> leftoverFiles = new HashSet<>();
+	
+	
+	/**
+	 * Create a new {@link PatternFileCache} in the default directory, with the default byte budget.
+	 */
+	public PatternFileCache() {
+		this(getDefaultDirectory(), DEFAULT_BYTE_BUDGET);
+	}
+	
+	/**
+	 * Create a new {@link PatternFileCache}. The directory is created when the first pattern is stored.
+	 * 
+	 * @param directory the directory of the pattern files
+	 * @param byteBudget the maximum size of all pattern files
+	 */
+	public PatternFileCache(Path directory, long byteBudget) {
+		if(byteBudget < 0)
+			throw new IllegalArgumentException("Invalid byte budget " + byteBudget);
+		this.directory = directory;
+		this.byteBudget = byteBudget;
+	}
+	
+	
+	/**
+	 * Get the default cache directory, below the directory of temporary files.
+	 * 
+	 * @return the default directory
+	 */
+	public static Path getDefaultDirectory() {
+		return Paths.get(System.getProperty("java.io.tmpdir"), "moiree-patterns");
+	}
+	
+	public Path getDirectory() {
+		return directory;
+	}
+	public long getByteBudget() {
+		return byteBudget;
+	}
+	
+	/**
+	 * Get the file of a pattern.
+	 * 
+	 * @param spec the spec of the pattern
+	 * @param width the width of the stored raster, may be less than the image width for periodic patterns
+	 * @param height the height of the stored raster
+	 * @return the file, which may not exist
+	 */
+	public Path getFile(ImageSpec spec, int width, int height) {
+		String name = spec.getImageMode().name() + "_" + spec.getImageWidth() + "x" + spec.getImageHeight()
+				+ "_" + spec.getPixelSize() + "_" + spec.getPixelDensity() + "_" + spec.getRandomSeed()
+				+ "_" + width + "x" + height + FILE_SUFFIX;
+		return directory.resolve(name);
+	}
+	
+	/**
+	 * Map the file of a pattern, or draw the pattern to a new file if there is none. If the drawer fails,
+	 * for example because it was cancelled, the temporary file is deleted.
+	 * 
+	 * @param spec the spec of the pattern
+	 * @param width the width of the stored raster
+	 * @param height the height of the stored raster
+	 * @param drawer draws the pattern to a new raster
+	 * @return the mapped raster
+	 * @throws IOException if the file cannot be written or mapped
+	 * @throws CancellationException if the drawer was cancelled
+	 */
+	public MappedRaster getOrDraw(ImageSpec spec, int width, int height, Consumer<? super MappedRaster> drawer) throws IOException, CancellationException {
+		Path file = getFile(spec, width, height);
+		if(Files.isRegularFile(file)) {
+			try {
+				MappedRaster raster = MappedRaster.open(file, width, height);
+				// the modification time orders the files by their last use
+				Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+				return addMappedFile(file, raster);
+			} catch(IOException e) {
+				// a broken file is drawn again, and replaced by the new one if it cannot be deleted
+				tryDelete(file);
+			}
+		}
+		
+		Files.createDirectories(directory);
+		deleteLeastRecentlyUsed(byteBudget - MappedRaster.getByteSize(width, height));
+		Path partFile = Files.createTempFile(directory, file.getFileName().toString(), PART_SUFFIX);
+		boolean drawn = false;
+		try {
+			MappedRaster raster = MappedRaster.create(partFile, width, height);
+			drawer.accept(raster);
+			raster.force();
+			drawn = true;
+			try {
+				Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				return addMappedFile(file, raster);
+			} catch(IOException e) {
+				// the file may be mapped by another session, the raster stays mapped from the temporary file
+				addLeftoverFile(partFile);
+				return addMappedFile(partFile, raster);
+			}
+		} finally {
+			if(! drawn && ! tryDelete(partFile))
+				addLeftoverFile(partFile);
+		}
+	}
+	
+	/**
+	 * Delete the least recently used pattern files until the others fit into the given size. Files in use are kept,
+	 * so the others may exceed the size. Left over temporary files are deleted too.
+	 * 
+	 * @param maxByteSize the maximum size of the kept files
+	 * @throws IOException if the directory cannot be read
+	 */
+	private synchronized void deleteLeastRecentlyUsed(long maxByteSize) throws IOException {
+		leftoverFiles.removeIf(this::tryDelete);
+		long staleTime = System.currentTimeMillis() - STALE_PART_MILLIS;
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + PART_SUFFIX)) {
+			for(Path file : stream)
+				if(getLastModifiedTime(file).toMillis() < staleTime)
+					tryDelete(file);
+		}
+		
+		List<Path> files = new ArrayList<>();
+		long byteSize = 0;
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+			for(Path file : stream) {
+				files.add(file);
+				byteSize += getSize(file);
+			}
+		}
+		files.sort(Comparator.comparing(PatternFileCache::getLastModifiedTime));
+		for(Path file : files) {
+			if(byteSize <= maxByteSize)
+				break;
+			long fileSize = getSize(file);
+			// files in use are skipped, and tried again by a later pass
+			if(tryDelete(file))
+				byteSize -= fileSize;
+		}
+	}
+	
+	/**
+	 * Delete a file unless a raster of this cache maps it.
+	 * 
+	 * @param file the file to delete
+	 * @return true if the file was deleted or did not exist, false if it is mapped or could not be deleted
+	 */
+	private synchronized boolean tryDelete(Path file) {
+		Reference<MappedRaster> raster = mappedFiles.get(file);
+		if(raster != null && raster.get() != null)
+			return false;
+		mappedFiles.remove(file);
+		try {
+			Files.deleteIfExists(file);
+			return true;
+		} catch(IOException e) {
+			// mapped by another session on Windows
+			return false;
+		}
+	}
+	
+	private synchronized MappedRaster addMappedFile(Path file, MappedRaster raster) {
+		mappedFiles.values().removeIf(reference -> reference.get() == null);
+		mappedFiles.put(file, new WeakReference<>(raster));
+		return raster;
+	}
+	
+	private synchronized void addLeftoverFile(Path file) {
+		leftoverFiles.add(file);
+	}
+	
+	private static long getSize(Path file) {
+		try {
+			return Files.size(file);
+		} catch(IOException e) {
+			// deleted by another session meanwhile
+			return 0;
+		}
+	}
+	
+	private static FileTime getLastModifiedTime(Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		} catch(IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+}
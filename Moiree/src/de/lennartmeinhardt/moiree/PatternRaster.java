@@ -0,0 +1,67 @@
+package de.lennartmeinhardt.moiree;
+
+import java.nio.IntBuffer;
+
+/**
+ * A two-valued pattern image. Set pixels are foreground pixels, cleared pixels are transparent.
+ * Implementations can be read from several threads at once.
+ * 
+ * @author Lennart Meinhardt
+ */
+public interface PatternRaster {
+
+	int getWidth();
+	int getHeight();
+	
+	/**
+	 * Check if the pixel at given coordinates is set.
+	 * 
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return true if the pixel is a foreground pixel
+	 */
+	boolean isSet(int x, int y);
+	
+	/**
+	 * Copy a row's bits into the given array. Pixel x of the row is bit x % 64 of word x / 64.
+	 * 
+	 * @param y the row index
+	 * @param row array of at least {@link BitRaster#getWordsPerRow(int)} words for the raster width
+	 */
+	void readRow(int y, long[] row);
+	
+	/**
+	 * Expand a part of a row to ARGB values.
+	 * 
+	 * @param y the row index
+	 * @param x the first column to expand
+	 * @param length the number of pixels to expand
+	 * @param argbs the array to write to
+	 * @param offset the array index of the first expanded pixel
+	 * @param setArgb the color of set pixels
+	 * @param unsetArgb the color of cleared pixels
+	 */
+	void expandRow(int y, int x, int length, int[] argbs, int offset, int setArgb, int unsetArgb);
+	
+	/**
+	 * Expand a part of a row to ARGB values in a buffer, like {@link #expandRow(int, int, int, int[], int, int, int)}.
+	 * The buffer is written at absolute indices, so a direct buffer is filled without an intermediate array
+	 * and its position and limit are not changed.
+	 * 
+	 * @param y the row index
+	 * @param x the first column to expand
+	 * @param length the number of pixels to expand
+	 * @param argbs the buffer to write to
+	 * @param offset the buffer index of the first expanded pixel
+	 * @param setArgb the color of set pixels
+	 * @param unsetArgb the color of cleared pixels
+	 */
+	void expandRow(int y, int x, int length, IntBuffer argbs, int offset, int setArgb, int unsetArgb);
+	
+	/**
+	 * Get the number of bytes used for the pixel data.
+	 * 
+	 * @return size of the pixel data in bytes
+	 */
+	long getByteSize();
+}
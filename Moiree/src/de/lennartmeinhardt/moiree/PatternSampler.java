@@ -0,0 +1,37 @@
+package de.lennartmeinhardt.moiree;
+
+/**
+ * Evaluates a two-valued pattern at real-valued coordinates. Pixel (x, y) of a pattern covers
+ * the square from (x, y) to (x + 1, y + 1), so sampling at its center yields the pixel's value.
+ * Samplers can be called from several threads at once.
+ * 
+ * @author Lennart Meinhardt
+ */
+@FunctionalInterface
+public interface PatternSampler {
+	
+	/**
+	 * Check if the pattern is set at given coordinates.
+	 * 
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return true if the pattern has foreground at the coordinates
+	 */
+	boolean isSet(double x, double y);
+	
+	
+	/**
+	 * Create a sampler that looks up the pixel containing the coordinates in a raster.
+	 * Coordinates outside of the raster are not set.
+	 * 
+	 * @param raster the raster to sample
+	 * @return sampler of the raster
+	 */
+	public static PatternSampler of(PatternRaster raster) {
+		return (x, y) -> {
+			if(x < 0 || y < 0 || x >= raster.getWidth() || y >= raster.getHeight())
+				return false;
+			return raster.isSet((int) x, (int) y);
+		};
+	}
+}
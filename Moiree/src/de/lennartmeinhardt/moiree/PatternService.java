@@ -0,0 +1,150 @@
+package de.lennartmeinhardt.moiree;
+
+import de.lennartmeinhardt.moiree.FlightRecorderEvents.RecalculationEvent;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Generates patterns and their preview images in the background.
+ * <p>
+ * Each generation draws the pattern and, if the image is too large to be dragged around smoothly, a reduced resolution preview
+ * in the foreground color with transparent background pixels. The full resolution image is refined from the pattern
+ * by a {@link ProgressiveRefiner}. Meanwhile the current image stays visible and interactive.
+ * Starting a new generation cancels a running one, its result is never delivered.
+ * <p>
+ * Generated patterns are kept in a {@link PatternCache}, so returning to a recently used spec, or recoloring,
+ * only creates the preview again. Patterns too large for the heap are kept in a {@link PatternFileCache}, which outlives the session.
+ * The generation times are recorded in the {@link MoireeMetrics}.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class PatternService extends Service<PatternService.GeneratedPattern> {
+	
+	// recently generated patterns
+	private final PatternCache cache;
+	// large patterns, mapped from files
+	private final PatternFileCache fileCache;
+	// receives the generation times
+	private final MoireeMetrics metrics;
+	// spec and color of the next generation
+	private ImageSpec spec;
+	private int foregroundArgb;
+	
+	
+	/**
+	 * Create a new {@link PatternService}.
+	 * 
+	 * @param cache the cache of generated patterns
+	 * @param fileCache the cache of pattern files, or null to generate all patterns on the heap
+	 * @param metrics receives the generation times
+	 */
+	public PatternService(PatternCache cache, PatternFileCache fileCache, MoireeMetrics metrics) {
+		this.cache = cache;
+		this.fileCache = fileCache;
+		this.metrics = metrics;
+	}
+	
+	
+	public PatternCache getCache() {
+		return cache;
+	}
+	
+	/**
+	 * Start generating a pattern, cancelling the running generation. Must be called on the FX thread.
+	 * 
+	 * @param spec the spec of the pattern
+	 * @param foregroundArgb the color of set pattern pixels
+	 */
+	public void generate(ImageSpec spec, int foregroundArgb) {
+		this.spec = spec;
+		this.foregroundArgb = foregroundArgb;
+		restart();
+	}
+	
+	@Override protected Task<GeneratedPattern> createTask() {
+		ImageSpec taskSpec = spec;
+		int taskArgb = foregroundArgb;
+		
+		return new Task<GeneratedPattern>() {
+			@Override protected GeneratedPattern call() throws Exception {
+				RecalculationEvent event = new RecalculationEvent();
+				event.begin();
+				try {
+					return recalculate(event);
+				} finally {
+					event.end();
+					if(event.shouldCommit()) {
+						event.mode = taskSpec.getImageMode().name();
+						event.width = taskSpec.getImageWidth();
+						event.height = taskSpec.getImageHeight();
+						event.pixelSize = taskSpec.getPixelSize();
+						event.cancelled = isCancelled();
+						event.commit();
+					}
+				}
+			}
+			
+			private GeneratedPattern recalculate(RecalculationEvent event) {
+				PatternRaster pattern = cache.get(taskSpec);
+				event.cacheHit = pattern != null;
+				if(pattern == null) {
+					long generationStart = System.nanoTime();
+					pattern = taskSpec.createRaster(fileCache);
+					metrics.recordGeneration(taskSpec.getImageMode(), System.nanoTime() - generationStart);
+					cache.put(taskSpec, pattern);
+				}
+				if(isCancelled())
+					return null;
+				
+				int factor = Drawing.getPreviewFactor(pattern.getWidth(), pattern.getHeight());
+				WritableImage preview = null;
+				if(factor > 1) {
+					preview = Drawing.createPreviewImage(pattern, factor, taskArgb, this::isCancelled);
+					event.imageBytes = 4L * (long) preview.getWidth() * (long) preview.getHeight();
+				}
+				return new GeneratedPattern(taskSpec, taskArgb, pattern, preview);
+			}
+		};
+	}
+	
+	
+	/**
+	 * A generated pattern together with its preview image.
+	 */
+	public static final class GeneratedPattern {
+		
+		private final ImageSpec spec;
+		private final int foregroundArgb;
+		private final PatternRaster pattern;
+		// null if the image is small enough to be shown without a preview
+		private final WritableImage preview;
+		
+		
+		private GeneratedPattern(ImageSpec spec, int foregroundArgb, PatternRaster pattern, WritableImage preview) {
+			this.spec = spec;
+			this.foregroundArgb = foregroundArgb;
+			this.pattern = pattern;
+			this.preview = preview;
+		}
+		
+		
+		public ImageSpec getSpec() {
+			return spec;
+		}
+		public int getForegroundArgb() {
+			return foregroundArgb;
+		}
+		public PatternRaster getPattern() {
+			return pattern;
+		}
+		/**
+		 * Get the reduced resolution preview of the pattern, see {@link Drawing#createPreviewImage(PatternRaster, int, int, java.util.function.BooleanSupplier)}.
+		 * 
+		 * @return the preview, or null if the image is small enough to be shown without a preview
+		 */
+		public WritableImage getPreview() {
+			return preview;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package de.lennartmeinhardt.moiree;
+
+import java.util.ResourceBundle;
+import java.util.zip.Deflater;
+
+/**
+ * Immutable encoding options for {@link PngWriter}.
+ * 
+ * @author Lennart Meinhardt
+ */
+public final class PngOptions {
+	
+	public static final PngOptions DEFAULT = new PngOptions(Deflater.DEFAULT_COMPRESSION, Filter.AUTOMATIC);
+	
+	// deflate level, 0 to 9 or Deflater.DEFAULT_COMPRESSION
+	private final int compressionLevel;
+	private final Filter filter;
+	// write images with few colors as indexed images
+	private final boolean indexed;
+	
+	
+	/**
+	 * Create new {@link PngOptions} that write images with few colors as indexed images.
+	 * 
+	 * @param compressionLevel the deflate level from 0 (none) to 9 (best), or {@link Deflater#DEFAULT_COMPRESSION}
+	 * @param filter the row filter strategy
+	 */
+	public PngOptions(int compressionLevel, Filter filter) {
+		this(compressionLevel, filter, true);
+	}
+	
+	/**
+	 * Create new {@link PngOptions}.
+	 * 
+	 * @param compressionLevel the deflate level from 0 (none) to 9 (best), or {@link Deflater#DEFAULT_COMPRESSION}
+	 * @param filter the row filter strategy
+	 * @param indexed true to write images with at most {@link PngWriter#MAX_PALETTE_SIZE} colors as indexed images,
+	 * false to write all images as RGBA images
+	 */
+	public PngOptions(int compressionLevel, Filter filter, boolean indexed) {
+		if(compressionLevel != Deflater.DEFAULT_COMPRESSION && (compressionLevel < 0 || compressionLevel > 9))
+			throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+		this.compressionLevel = compressionLevel;
+		this.filter = filter;
+		this.indexed = indexed;
+	}
+	
+	
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+	public Filter getFilter() {
+		return filter;
+	}
+	public boolean isIndexed() {
+		return indexed;
+	}
+	
+	/**
+	 * Get the palette to write an image with.
+	 * 
+	 * @param source the image to write
+	 * @return the palette of the image, or null to write an RGBA image
+	 */
+	public int[] getPalette(ScanlineSource source) {
+		return indexed ? source.getPalette() : null;
+	}
+	
+	
+	/**
+	 * The row filter strategies. The first five are the PNG filter types and are applied to every row.
+	 */
+	public static enum Filter {
+		NONE("pngFilterNone"), SUB("pngFilterSub"), UP("pngFilterUp"), AVERAGE("pngFilterAverage"), PAETH("pngFilterPaeth"),
+		/** Choose the filter with the smallest sum of absolute differences for every row. */
+		ADAPTIVE("pngFilterAdaptive"),
+		/** Use {@link #NONE} for indexed images and {@link #ADAPTIVE} for RGBA images. */
+		AUTOMATIC("pngFilterAutomatic");
+		
+		// the internal name
+		private final String nameKey;
+		
+		private Filter(String nameKey) {
+			this.nameKey = nameKey;
+		}
+		
+		/**
+		 * Get the localized name of this object from a {@link ResourceBundle}.
+		 * 
+		 * @param resources the resource bundle
+		 * @return localized name
+		 */
+		public String getName(ResourceBundle resources) {
+			return resources.getString(nameKey);
+		}
+	}
+}
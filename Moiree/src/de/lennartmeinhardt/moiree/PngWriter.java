@@ -0,0 +1,504 @@
+package de.lennartmeinhardt.moiree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import de.lennartmeinhardt.moiree.PngOptions.Filter;
+
+/**
+ * Writes PNG images row by row. Rows are deflated as they arrive and written to a {@link FileChannel}
+ * in IDAT chunks, so only two rows and the compression buffers are held in memory, regardless of the image size.
+ * <p>
+ * Images with a palette of at most 256 colors are written as indexed images with 1, 2, 4 or 8 bits per pixel,
+ * all others as 8 bit RGBA.
+ * <p>
+ * Animated PNGs (APNG) are written the same way, frame after frame. Each frame covers the whole image,
+ * the rows of all frames are simply written one after another.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class PngWriter implements Closeable {
+	
+	private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+	// size of the compressed data collected before an IDAT chunk is written
+	private static final int CHUNK_SIZE = 1 << 16;
+	
+	private static final byte COLOR_TYPE_INDEXED = 3;
+	private static final byte COLOR_TYPE_RGBA = 6;
+	
+	/** The maximum number of palette colors. */
+	public static final int MAX_PALETTE_SIZE = 256;
+	
+	private final FileChannel channel;
+	private final int width;
+	private final int height;
+	// number of animation frames, 1 for still images
+	private final int frameCount;
+	private final int frameDelayMillis;
+	
+	// the palette and its lookup table, null for RGBA images
+	private final int[] palette;
+	private final PaletteIndex paletteIndex;
+	private final int bitDepth;
+	// bytes per complete pixel, at least one. Filters refer to the byte this far to the left
+	private final int filterOffset;
+	private final Filter filter;
+	
+	private final Deflater deflater;
+	private final CRC32 crc = new CRC32();
+	// unfiltered bytes of the current and the previous row
+	private byte[] row;
+	private byte[] previousRow;
+	// the filtered row including the leading filter type byte, and a candidate for adaptive filtering
+	private byte[] filteredRow;
+	private byte[] candidateRow;
+	// the compressed data of the next IDAT chunk
+	private final byte[] chunkData = new byte[CHUNK_SIZE];
+	private int chunkLength;
+	
+	// rows written of the current frame
+	private int rowsWritten;
+	private int framesWritten;
+	// sequence number of the next animation chunk
+	private int sequenceNumber;
+	private long bytesWritten;
+	
+	
+	/**
+	 * Create a new {@link PngWriter} for RGBA images with default options and write the PNG header.
+	 * An existing file is replaced.
+	 * 
+	 * @param file the file to write to
+	 * @param width the image width
+	 * @param height the image height
+	 * @throws IOException if the file could not be opened or written
+	 */
+	public PngWriter(Path file, int width, int height) throws IOException {
+		this(file, width, height, null, PngOptions.DEFAULT);
+	}
+	
+	/**
+	 * Create a new {@link PngWriter} and write the PNG header. An existing file is replaced.
+	 * 
+	 * @param file the file to write to
+	 * @param width the image width
+	 * @param height the image height
+	 * @param palette the ARGB colors of all pixels, or null to write an RGBA image
+	 * @param options the encoding options
+	 * @throws IOException if the file could not be opened or written
+	 */
+	public PngWriter(Path file, int width, int height, int[] palette, PngOptions options) throws IOException {
+		this(file, width, height, palette, options, 1, 0);
+	}
+	
+	/**
+	 * Create a new {@link PngWriter} for an animated PNG and write the PNG header. An existing file is replaced.
+	 * The animation loops forever.
+	 * 
+	 * @param file the file to write to
+	 * @param width the image width
+	 * @param height the image height
+	 * @param palette the ARGB colors of all pixels of all frames, or null to write an RGBA image
+	 * @param options the encoding options
+	 * @param frameCount the number of frames
+	 * @param frameDelayMillis the time each frame is shown in milliseconds
+	 * @throws IOException if the file could not be opened or written
+	 */
+	public PngWriter(Path file, int width, int height, int[] palette, PngOptions options, int frameCount, int frameDelayMillis) throws IOException {
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+		if(palette != null && (palette.length == 0 || palette.length > MAX_PALETTE_SIZE))
+			throw new IllegalArgumentException("Invalid palette size " + palette.length);
+		if(frameCount <= 0 || frameDelayMillis < 0 || frameDelayMillis > 0xffff)
+			throw new IllegalArgumentException("Invalid animation with " + frameCount + " frames of " + frameDelayMillis + "ms");
+		this.width = width;
+		this.height = height;
+		this.frameCount = frameCount;
+		this.frameDelayMillis = frameDelayMillis;
+		this.palette = palette == null ? null : palette.clone();
+		this.paletteIndex = palette == null ? null : new PaletteIndex(palette);
+		this.bitDepth = palette == null ? 8 : getIndexBitDepth(palette.length);
+		int bitsPerPixel = palette == null ? 32 : bitDepth;
+		this.filterOffset = Math.max(1, bitsPerPixel / 8);
+		this.filter = options.getFilter() != Filter.AUTOMATIC ? options.getFilter() : palette == null ? Filter.ADAPTIVE : Filter.NONE;
+		this.deflater = new Deflater(options.getCompressionLevel());
+		
+		int rowLength = (int) (((long) width * bitsPerPixel + 7) / 8);
+		this.row = new byte[rowLength];
+		this.previousRow = new byte[rowLength];
+		this.filteredRow = new byte[1 + rowLength];
+		this.candidateRow = new byte[1 + rowLength];
+		
+		this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			writeHeader();
+		} catch(IOException e) {
+			deflater.end();
+			channel.close();
+			throw e;
+		}
+	}
+	
+	
+	/**
+	 * Get the smallest PNG bit depth for indexed images with given number of colors.
+	 * 
+	 * @param paletteSize the number of colors
+	 * @return 1, 2, 4 or 8
+	 */
+	public static int getIndexBitDepth(int paletteSize) {
+		if(paletteSize <= 2)
+			return 1;
+		else if(paletteSize <= 4)
+			return 2;
+		else if(paletteSize <= 16)
+			return 4;
+		else
+			return 8;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	public int getHeight() {
+		return height;
+	}
+	public int getBitDepth() {
+		return bitDepth;
+	}
+	public boolean isIndexed() {
+		return palette != null;
+	}
+	public boolean isAnimated() {
+		return frameCount > 1;
+	}
+	
+	/**
+	 * Get the number of bytes written to the file so far.
+	 * 
+	 * @return number of written bytes
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+	
+	/**
+	 * Write the next rows of the image. For animations, the rows after the last row of a frame belong to the next frame.
+	 * 
+	 * @param argbs the ARGB pixels, row after row, with a scanline stride of the image width
+	 * @param offset the array index of the first pixel
+	 * @param rows the number of rows
+	 * @throws IOException if writing fails
+	 * @throws IllegalArgumentException if a pixel color is not in the palette
+	 */
+	public void writeRows(int[] argbs, int offset, int rows) throws IOException, IllegalArgumentException {
+		for(int r = 0; r < rows; r++) {
+			if(rowsWritten == height) {
+				if(framesWritten == frameCount - 1)
+					throw new IllegalStateException("Image has only " + height + " rows and " + frameCount + " frames");
+				finishFrame();
+			}
+			if(rowsWritten == 0 && isAnimated())
+				writeFrameControl();
+			
+			if(palette == null)
+				packRgbaRow(argbs, offset + r * width);
+			else
+				packIndexedRow(argbs, offset + r * width);
+			filterRow();
+			
+			deflater.setInput(filteredRow);
+			while(! deflater.needsInput())
+				deflate();
+			
+			byte[] swap = previousRow;
+			previousRow = row;
+			row = swap;
+			rowsWritten++;
+		}
+	}
+	
+	/**
+	 * Finish the image data, write the trailer and close the file. The byte count includes the trailer afterwards.
+	 * Finishing or closing a finished writer has no effect. If the file was closed by an interrupt of the writing thread,
+	 * only the compressor is released.
+	 * 
+	 * @throws IOException if writing fails or not all rows were written
+	 */
+	public void finish() throws IOException {
+		if(! channel.isOpen()) {
+			// ending the compressor again has no effect
+			deflater.end();
+			return;
+		}
+		try {
+			if(rowsWritten < height || framesWritten < frameCount - 1)
+				throw new IOException("Only " + rowsWritten + " of " + height + " rows of frame " + (framesWritten + 1) + " of " + frameCount + " were written");
+			finishFrame();
+			writeChunk("IEND", chunkData, 0);
+		} finally {
+			deflater.end();
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Finish the image, see {@link #finish()}.
+	 * 
+	 * @throws IOException if writing fails or not all rows were written
+	 */
+	@Override public void close() throws IOException {
+		finish();
+	}
+	
+	/**
+	 * Flush the compressed data of the current frame and prepare for the next one.
+	 */
+	private void finishFrame() throws IOException {
+		deflater.finish();
+		while(! deflater.finished())
+			deflate();
+		if(chunkLength > 0)
+			writeImageData();
+		
+		deflater.reset();
+		Arrays.fill(previousRow, (byte) 0);
+		rowsWritten = 0;
+		framesWritten++;
+	}
+	
+	/**
+	 * Write the frame control chunk that starts a new animation frame.
+	 */
+	private void writeFrameControl() throws IOException {
+		ByteBuffer control = ByteBuffer.allocate(26);
+		control.putInt(sequenceNumber++).putInt(width).putInt(height).putInt(0).putInt(0);
+		// delay numerator and denominator, dispose and blend operations
+		control.putShort((short) frameDelayMillis).putShort((short) 1000).put((byte) 0).put((byte) 0);
+		writeChunk("fcTL", control.array(), 26);
+	}
+	
+	/**
+	 * Write the collected compressed data. The first frame is stored in IDAT chunks,
+	 * all further animation frames in fdAT chunks.
+	 */
+	private void writeImageData() throws IOException {
+		if(framesWritten == 0) {
+			writeChunk("IDAT", chunkData, chunkLength);
+		} else {
+			ByteBuffer sequence = ByteBuffer.allocate(4);
+			sequence.putInt(sequenceNumber++);
+			writeChunk("fdAT", sequence.array(), chunkData, chunkLength);
+		}
+		chunkLength = 0;
+	}
+	
+	private void writeHeader() throws IOException {
+		write(ByteBuffer.wrap(SIGNATURE));
+		
+		ByteBuffer header = ByteBuffer.allocate(13);
+		header.putInt(width).putInt(height);
+		// bit depth, color type, compression, filter method, interlace
+		header.put((byte) bitDepth).put(palette == null ? COLOR_TYPE_RGBA : COLOR_TYPE_INDEXED).put((byte) 0).put((byte) 0).put((byte) 0);
+		writeChunk("IHDR", header.array(), 13);
+		
+		if(isAnimated()) {
+			// number of frames, number of plays with 0 for infinite
+			ByteBuffer animationControl = ByteBuffer.allocate(8);
+			animationControl.putInt(frameCount).putInt(0);
+			writeChunk("acTL", animationControl.array(), 8);
+		}
+		
+		if(palette != null) {
+			byte[] colors = new byte[3 * palette.length];
+			byte[] alphas = new byte[palette.length];
+			// the transparency chunk may end after the last non-opaque color
+			int alphaCount = 0;
+			for(int i = 0; i < palette.length; i++) {
+				colors[3 * i] = (byte) (palette[i] >>> 16);
+				colors[3 * i + 1] = (byte) (palette[i] >>> 8);
+				colors[3 * i + 2] = (byte) palette[i];
+				alphas[i] = (byte) (palette[i] >>> 24);
+				if(alphas[i] != (byte) 0xff)
+					alphaCount = i + 1;
+			}
+			writeChunk("PLTE", colors, colors.length);
+			if(alphaCount > 0)
+				writeChunk("tRNS", alphas, alphaCount);
+		}
+	}
+	
+	private void packRgbaRow(int[] argbs, int offset) {
+		for(int x = 0, i = 0; x < width; x++) {
+			int argb = argbs[offset + x];
+			row[i++] = (byte) (argb >>> 16);
+			row[i++] = (byte) (argb >>> 8);
+			row[i++] = (byte) argb;
+			row[i++] = (byte) (argb >>> 24);
+		}
+	}
+	
+	private void packIndexedRow(int[] argbs, int offset) {
+		Arrays.fill(row, (byte) 0);
+		int pixelsPerByte = 8 / bitDepth;
+		for(int x = 0; x < width; x++) {
+			int index = paletteIndex.indexOf(argbs[offset + x]);
+			// the leftmost pixel is stored in the most significant bits
+			int shift = 8 - bitDepth * (x % pixelsPerByte + 1);
+			row[x / pixelsPerByte] |= index << shift;
+		}
+	}
+	
+	/**
+	 * Filter the current row into the filtered row, according to the filter strategy.
+	 */
+	private void filterRow() {
+		if(filter != Filter.ADAPTIVE) {
+			applyFilter(filter, filteredRow);
+			return;
+		}
+		long bestSum = Long.MAX_VALUE;
+		for(Filter candidate : new Filter[] {Filter.NONE, Filter.SUB, Filter.UP, Filter.AVERAGE, Filter.PAETH}) {
+			long sum = applyFilter(candidate, candidateRow);
+			if(sum < bestSum) {
+				bestSum = sum;
+				byte[] swap = filteredRow;
+				filteredRow = candidateRow;
+				candidateRow = swap;
+			}
+		}
+	}
+	
+	/**
+	 * Apply a single PNG filter to the current row.
+	 * 
+	 * @param type the filter to apply
+	 * @param target the array to write the filter type and filtered bytes to
+	 * @return sum of the absolute values of the filtered bytes, read as signed values
+	 */
+	private long applyFilter(Filter type, byte[] target) {
+		target[0] = (byte) type.ordinal();
+		long sum = 0;
+		for(int i = 0; i < row.length; i++) {
+			int raw = row[i] & 0xff;
+			int left = i >= filterOffset ? row[i - filterOffset] & 0xff : 0;
+			int up = previousRow[i] & 0xff;
+			int upLeft = i >= filterOffset ? previousRow[i - filterOffset] & 0xff : 0;
+			int predicted;
+			switch(type) {
+			case SUB: predicted = left; break;
+			case UP: predicted = up; break;
+			case AVERAGE: predicted = (left + up) >>> 1; break;
+			case PAETH: predicted = paethPredictor(left, up, upLeft); break;
+			default: predicted = 0; break;
+			}
+			byte filtered = (byte) (raw - predicted);
+			target[i + 1] = filtered;
+			sum += Math.abs(filtered);
+		}
+		return sum;
+	}
+	
+	private static int paethPredictor(int left, int up, int upLeft) {
+		int estimate = left + up - upLeft;
+		int distanceLeft = Math.abs(estimate - left);
+		int distanceUp = Math.abs(estimate - up);
+		int distanceUpLeft = Math.abs(estimate - upLeft);
+		if(distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft)
+			return left;
+		else if(distanceUp <= distanceUpLeft)
+			return up;
+		else
+			return upLeft;
+	}
+	
+	/**
+	 * Compress pending input into the chunk buffer, writing an IDAT chunk whenever it is full.
+	 */
+	private void deflate() throws IOException {
+		chunkLength += deflater.deflate(chunkData, chunkLength, CHUNK_SIZE - chunkLength);
+		if(chunkLength == CHUNK_SIZE)
+			writeImageData();
+	}
+	
+	private void writeChunk(String type, byte[] data, int length) throws IOException {
+		writeChunk(type, new byte[0], data, length);
+	}
+	
+	private void writeChunk(String type, byte[] prefix, byte[] data, int length) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		crc.reset();
+		crc.update(typeBytes);
+		crc.update(prefix);
+		crc.update(data, 0, length);
+		
+		ByteBuffer header = ByteBuffer.allocate(8);
+		header.putInt(prefix.length + length).put(typeBytes).flip();
+		write(header);
+		write(ByteBuffer.wrap(prefix));
+		write(ByteBuffer.wrap(data, 0, length));
+		ByteBuffer trailer = ByteBuffer.allocate(4);
+		trailer.putInt((int) crc.getValue()).flip();
+		write(trailer);
+	}
+	
+	private void write(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining())
+			bytesWritten += channel.write(buffer);
+	}
+	
+	
+	/**
+	 * Open addressing hash table from ARGB colors to palette indices.
+	 */
+	private static class PaletteIndex {
+		
+		private final int[] colors;
+		private final int[] indices;
+		private final int mask;
+		// the last looked up color, most neighboring pixels are equal
+		private int lastColor;
+		private int lastIndex = -1;
+		
+		PaletteIndex(int[] palette) {
+			int capacity = Integer.highestOneBit(palette.length * 4 - 1) << 1;
+			this.colors = new int[capacity];
+			this.indices = new int[capacity];
+			this.mask = capacity - 1;
+			Arrays.fill(indices, -1);
+			for(int i = 0; i < palette.length; i++) {
+				int slot = slot(palette[i]);
+				if(indices[slot] < 0) {
+					colors[slot] = palette[i];
+					indices[slot] = i;
+				}
+			}
+		}
+		
+		int indexOf(int argb) {
+			if(argb == lastColor && lastIndex >= 0)
+				return lastIndex;
+			int slot = slot(argb);
+			if(indices[slot] < 0)
+				throw new IllegalArgumentException(String.format("Color #%08x is not in the palette", argb));
+			lastColor = argb;
+			lastIndex = indices[slot];
+			return lastIndex;
+		}
+		
+		private int slot(int argb) {
+			int slot = (argb * 0x9e3779b9) >>> 16 & mask;
+			while(indices[slot] >= 0 && colors[slot] != argb)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
+	}
+}
@@ -25,10 +25,18 @@ public class PreferencesHelper {
 	private static final String KEY_IMAGE_MODE_INDEX = "imageModeIndex";
 	private static final String KEY_IMAGE_WIDTH = "imageWidth";
 	private static final String KEY_IMAGE_HEIGHT = "imageHeight";
+	private static final String KEY_RANDOM_SEED = "randomSeed";
+	// PNG export
+	private static final String KEY_PNG_COMPRESSION_LEVEL = "pngCompressionLevel";
+	private static final String KEY_PNG_FILTER_INDEX = "pngFilterIndex";
+	private static final String KEY_PNG_INDEXED = "pngIndexed";
 	// others
 	private static final String KEY_ENABLE_ANIMATIONS = "enableAnimations";
 	private static final String KEY_TRANS_SETUP_EXPANDED = "transformationSetupExpanded";
 	private static final String KEY_IMAGE_PANE_EXPANDED = "imagePaneExpanded";
+	private static final String KEY_METRICS_OVERLAY_SHOWN = "metricsOverlayShown";
+	private static final String KEY_SPECTRUM_PANE_EXPANDED = "spectrumPaneExpanded";
+	private static final String KEY_FRINGES_SHOWN = "fringesShown";
 	// colors
 	private static final String KEY_BACKGROUND_COLOR_PREFIX = "backgroundColor";
 	private static final String KEY_FOREGROUND_COLOR_PREFIX = "foregroundColor";
@@ -149,6 +157,38 @@ public class PreferencesHelper {
 		return preferences.getInt(KEY_IMAGE_HEIGHT, defaultValue);
 	}
 	
+	public void setRandomSeed(long value) {
+		this.preferences.putLong(KEY_RANDOM_SEED, value);
+	}
+	public long getRandomSeed(long defaultValue) {
+		return preferences.getLong(KEY_RANDOM_SEED, defaultValue);
+	}
+	
+	/********************************************
+	 **************** PNG export ****************
+	 ********************************************/
+	
+	public int getPngCompressionLevel(int defaultValue) {
+		return preferences.getInt(KEY_PNG_COMPRESSION_LEVEL, defaultValue);
+	}
+	public void setPngCompressionLevel(int value) {
+		preferences.putInt(KEY_PNG_COMPRESSION_LEVEL, value);
+	}
+	
+	public int getPngFilterIndex(int defaultValue) {
+		return preferences.getInt(KEY_PNG_FILTER_INDEX, defaultValue);
+	}
+	public void setPngFilterIndex(int value) {
+		preferences.putInt(KEY_PNG_FILTER_INDEX, value);
+	}
+	
+	public boolean isPngIndexed(boolean defaultValue) {
+		return preferences.getBoolean(KEY_PNG_INDEXED, defaultValue);
+	}
+	public void setPngIndexed(boolean value) {
+		preferences.putBoolean(KEY_PNG_INDEXED, value);
+	}
+	
 	/********************************************
 	 ************** Other settings **************
 	 ********************************************/
@@ -173,6 +213,27 @@ public class PreferencesHelper {
 	public void setImagePaneExpanded(boolean value) {
 		preferences.putBoolean(KEY_IMAGE_PANE_EXPANDED, value);
 	}
+
+	public boolean isMetricsOverlayShown(boolean defaultValue) {
+		return preferences.getBoolean(KEY_METRICS_OVERLAY_SHOWN, defaultValue);
+	}
+	public void setMetricsOverlayShown(boolean value) {
+		preferences.putBoolean(KEY_METRICS_OVERLAY_SHOWN, value);
+	}
+
+	public boolean isSpectrumPaneExpanded(boolean defaultValue) {
+		return preferences.getBoolean(KEY_SPECTRUM_PANE_EXPANDED, defaultValue);
+	}
+	public void setSpectrumPaneExpanded(boolean value) {
+		preferences.putBoolean(KEY_SPECTRUM_PANE_EXPANDED, value);
+	}
+
+	public boolean isFringesShown(boolean defaultValue) {
+		return preferences.getBoolean(KEY_FRINGES_SHOWN, defaultValue);
+	}
+	public void setFringesShown(boolean value) {
+		preferences.putBoolean(KEY_FRINGES_SHOWN, value);
+	}
 	
 	/********************************************
 	 ****************** Colors ******************
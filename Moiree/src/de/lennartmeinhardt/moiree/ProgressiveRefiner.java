@@ -0,0 +1,325 @@
+package de.lennartmeinhardt.moiree;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+import de.lennartmeinhardt.moiree.FlightRecorderEvents.RefinementEvent;
+import de.lennartmeinhardt.moiree.TileCache.Tile;
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
+import javafx.beans.InvalidationListener;
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.image.WritableImage;
+import javafx.util.Duration;
+
+/**
+ * Decides which parts of a pattern the Moir views show at full resolution, and refines them tile by tile on the FX thread.
+ * <p>
+ * The views are {@link TiledPatternView}s that show the pattern in tiles of {@link #TILE_SIZE} pixels. On every pulse after
+ * a change, the viewport is transformed back into each view, which gives the tiles intersecting the screen: for the lower
+ * view the visible part of the pattern, for the transformed upper view the footprint of the screen under the inverse
+ * transformation. Only these tiles are shown. Missing ones are expanded into a {@link TileCache}, as many per pulse
+ * as fit into a time budget, starting at the center of the viewport. So the work per pulse depends on the number of screen
+ * pixels, not on the pattern size. Meanwhile the views show the stretched preview of the pattern behind the tiles.
+ * <p>
+ * A new pattern of the same size replaces the cached tiles in place, so it appears tile by tile over the previous one.
+ * While the user interacts with the image no tiles are expanded, cached tiles and the preview are shown instead.
+ * Refinement continues after a short idle period. Patterns without a preview are refined during interaction as well,
+ * they are small enough. If more tiles are visible than the cache can hold, only the preview is shown.
+ * The tile sets and lists of a pulse are kept for the next one, so pulses allocate nothing while the visible tiles stay the same.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class ProgressiveRefiner extends AnimationTimer {
+	
+	public static final int TILE_SIZE = 512;
+	// the size of the tile cache, in pixels of four bytes. Patterns up to this size can be refined completely
+	public static final long MAX_REFINED_PIXELS = 1L << 27;
+	// expansion time per pulse, leaving the rest of a 60 Hz frame to the scene
+	private static final long PULSE_BUDGET_NANOS = 6_000_000;
+	// time without input before refinement continues
+	private static final Duration IDLE_DELAY = Duration.millis(300);
+	
+	// the node whose bounds are visible
+	private final Node viewport;
+	private final TiledPatternView[] views;
+	private final MoireeMetrics metrics;
+	private final TileCache tileCache = new TileCache(MAX_REFINED_PIXELS * Integer.BYTES);
+	private final PauseTransition idleTimer = new PauseTransition(IDLE_DELAY);
+	
+	private PatternRaster pattern;
+	// premultiplied, like the tile buffers
+	private int foregroundArgb;
+	// the preview of the pattern, null if it has none
+	private WritableImage preview;
+	private int tilesX, tilesY;
+	private boolean interacting;
+	
+	// the running refinement, null if the visible tiles are complete
+	private RefinementEvent event;
+	private int refinedTiles;
+	private int pulses;
+	private long expansionNanos;
+	
+	// buffers kept between pulses: the visible tiles of each view and their number, the tiles needed by all views,
+	// the tiles shown in a view, and the tiles keyed by their distance to the viewport center for sorting
+	private final int[][] visibleTiles;
+	private final int[] visibleTileCounts;
+	private final BitSet neededTiles = new BitSet();
+	private final BitSet shownTiles = new BitSet();
+	private final IntPredicate isShownTile = shownTiles::get;
+	private long[] tileKeys = new long[0];
+	
+	
+	/**
+	 * Create a new {@link ProgressiveRefiner}.
+	 * 
+	 * @param metrics receives the expansion times and image sizes
+	 * @param viewport the node whose bounds are visible, for example the root of the scene
+	 * @param views the views to show the pattern in
+	 */
+	public ProgressiveRefiner(MoireeMetrics metrics, Node viewport, TiledPatternView... views) {
+		this.metrics = metrics;
+		this.viewport = viewport;
+		this.views = views;
+		visibleTiles = new int[views.length][0];
+		visibleTileCounts = new int[views.length];
+		idleTimer.setOnFinished(ev -> {
+			interacting = false;
+			start();
+		});
+		
+		// the visible tiles change with the window size and the views' positions and transformations
+		InvalidationListener invalidationListener = observable -> start();
+		viewport.layoutBoundsProperty().addListener(invalidationListener);
+		for(TiledPatternView view : views)
+			view.localToSceneTransformProperty().addListener(invalidationListener);
+	}
+	
+	
+	/**
+	 * Start refining a new pattern. Must be called on the FX thread.
+	 * 
+	 * @param pattern the pattern to show
+	 * @param foregroundArgb the color of set pattern pixels
+	 * @param preview the preview of the pattern, or null if it has none
+	 */
+	public void show(PatternRaster pattern, int foregroundArgb, WritableImage preview) {
+		int width = pattern.getWidth();
+		int height = pattern.getHeight();
+		boolean sameSize = this.pattern != null && this.pattern.getWidth() == width && this.pattern.getHeight() == height;
+		this.pattern = pattern;
+		// the buffers hold premultiplied values
+		this.foregroundArgb = Drawing.premultiply(foregroundArgb);
+		this.preview = preview;
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		
+		// tiles of the previous pattern are shown until they are refined in place, if they are at the same positions
+		if(sameSize)
+			tileCache.invalidate();
+		else
+			tileCache.clear();
+		for(TiledPatternView view : views) {
+			if(! sameSize)
+				view.retainTiles(tile -> false);
+			view.setPattern(width, height, preview);
+		}
+		// a running refinement of the previous pattern is not committed
+		event = null;
+		updateMetrics();
+		start();
+	}
+	
+	/**
+	 * Pause refinement until the interaction ended.
+	 */
+	public void beginInteraction() {
+		interacting = true;
+		idleTimer.stop();
+	}
+	
+	/**
+	 * Continue refinement after the idle delay, unless another interaction begins before.
+	 */
+	public void endInteraction() {
+		idleTimer.playFromStart();
+	}
+	
+	@Override public void handle(long now) {
+		if(pattern == null) {
+			stop();
+			return;
+		}
+		
+		// the tiles visible in each view, closest to the viewport center first
+		neededTiles.clear();
+		for(int i = 0; i < views.length; i++) {
+			// reading the transformation validates it, so its next change is reported again
+			views[i].getLocalToSceneTransform();
+			updateVisibleTiles(i);
+			for(int j = 0; j < visibleTileCounts[i]; j++) {
+				int tile = visibleTiles[i][j];
+				neededTiles.set(tile);
+				// touch the tile, so only invisible tiles are evicted
+				tileCache.get(tile);
+			}
+		}
+		boolean previewOnly = (long) neededTiles.cardinality() * TILE_SIZE * TILE_SIZE * Integer.BYTES > tileCache.getByteBudget();
+		
+		// refine missing tiles within the budget, at least one per pulse
+		boolean complete = true;
+		if(! previewOnly) {
+			boolean refine = ! interacting || preview == null;
+			long start = System.nanoTime();
+			int refined = 0;
+			for(int i = 0; i < views.length; i++) {
+				for(int j = 0; j < visibleTileCounts[i]; j++) {
+					int tile = visibleTiles[i][j];
+					Tile cached = tileCache.get(tile);
+					if(cached != null && cached.isCurrent())
+						continue;
+					if(refine && (refined == 0 || System.nanoTime() - start < PULSE_BUDGET_NANOS)) {
+						refineTile(tile);
+						refined++;
+					} else
+						complete = false;
+				}
+			}
+			if(refined > 0) {
+				expansionNanos += System.nanoTime() - start;
+				pulses++;
+			}
+		}
+		
+		for(int i = 0; i < views.length; i++)
+			updateView(views[i], visibleTiles[i], visibleTileCounts[i], previewOnly);
+		if(complete)
+			finishRefinement();
+		updateMetrics();
+		// the timer is started again when something changes
+		if(complete || previewOnly || (interacting && preview != null))
+			stop();
+	}
+	
+	/**
+	 * Show the cached ones of the visible tiles, and hide all others.
+	 * 
+	 * @param view the view to update
+	 * @param visibleTiles the tiles visible in the view
+	 * @param count the number of visible tiles
+	 * @param previewOnly whether to hide all tiles
+	 */
+	private void updateView(TiledPatternView view, int[] visibleTiles, int count, boolean previewOnly) {
+		shownTiles.clear();
+		if(! previewOnly) {
+			for(int i = 0; i < count; i++) {
+				int tile = visibleTiles[i];
+				Tile cached = tileCache.get(tile);
+				if(cached != null) {
+					view.showTile(tile, getTileX(tile), getTileY(tile), cached.getImage());
+					shownTiles.set(tile);
+				}
+			}
+		}
+		view.retainTiles(isShownTile);
+		view.setPreviewVisible(shownTiles.cardinality() < count);
+	}
+	
+	/**
+	 * Find the tiles intersecting the viewport in a view, closest to the viewport center first. The view's buffer
+	 * of visible tiles only grows.
+	 * 
+	 * @param index the index of the view
+	 */
+	private void updateVisibleTiles(int index) {
+		Bounds bounds = views[index].getVisibleBounds(viewport);
+		if(bounds == null) {
+			visibleTileCounts[index] = 0;
+			return;
+		}
+		int fromX = Math.max(0, (int) Math.floor(bounds.getMinX() / TILE_SIZE));
+		int toX = Math.min(tilesX - 1, (int) Math.floor(bounds.getMaxX() / TILE_SIZE));
+		int fromY = Math.max(0, (int) Math.floor(bounds.getMinY() / TILE_SIZE));
+		int toY = Math.min(tilesY - 1, (int) Math.floor(bounds.getMaxY() / TILE_SIZE));
+		int columns = toX - fromX + 1;
+		double centerX = bounds.getMinX() + bounds.getWidth() / 2;
+		double centerY = bounds.getMinY() + bounds.getHeight() / 2;
+		int rows = toY - fromY + 1;
+		int count = columns > 0 && rows > 0 ? columns * rows : 0;
+		if(tileKeys.length < count)
+			tileKeys = new long[count];
+		if(visibleTiles[index].length < count)
+			visibleTiles[index] = new int[count];
+		
+		// the bits of a non-negative float order like the float, so the keys sort by distance and then by tile
+		for(int i = 0; i < count; i++) {
+			int tile = (fromY + i / columns) * tilesX + fromX + i % columns;
+			double dx = getTileX(tile) + TILE_SIZE / 2. - centerX;
+			double dy = getTileY(tile) + TILE_SIZE / 2. - centerY;
+			tileKeys[i] = (long) Float.floatToIntBits((float) (dx * dx + dy * dy)) << 32 | tile;
+		}
+		Arrays.sort(tileKeys, 0, count);
+		for(int i = 0; i < count; i++)
+			visibleTiles[index][i] = (int) tileKeys[i];
+		visibleTileCounts[index] = count;
+	}
+	
+	private int getTileX(int tile) {
+		return tile % tilesX * TILE_SIZE;
+	}
+	private int getTileY(int tile) {
+		return tile / tilesX * TILE_SIZE;
+	}
+	
+	private void refineTile(int tile) {
+		if(event == null) {
+			event = new RefinementEvent();
+			event.begin();
+			refinedTiles = 0;
+			pulses = 0;
+			expansionNanos = 0;
+		}
+		int x = getTileX(tile);
+		int y = getTileY(tile);
+		int tileWidth = Math.min(TILE_SIZE, pattern.getWidth() - x);
+		int tileHeight = Math.min(TILE_SIZE, pattern.getHeight() - y);
+		Tile cached = tileCache.allocate(tile, tileWidth, tileHeight);
+		// the whole tile is dirty, it is uploaded if it is shown
+		cached.getPixels().updateBuffer(pixels -> {
+			IntBuffer argbs = pixels.getBuffer();
+			for(int row = 0; row < tileHeight; row++)
+				pattern.expandRow(y + row, x, tileWidth, argbs, row * tileWidth, foregroundArgb, Drawing.ARGB_TRANSPARENT);
+			return new Rectangle2D(0, 0, tileWidth, tileHeight);
+		});
+		cached.setCurrent();
+		refinedTiles++;
+	}
+	
+	private void finishRefinement() {
+		if(event == null)
+			return;
+		metrics.recordRecolor(expansionNanos);
+		
+		event.end();
+		if(event.shouldCommit()) {
+			event.width = pattern.getWidth();
+			event.height = pattern.getHeight();
+			event.tiles = refinedTiles;
+			event.pulses = pulses;
+			event.expansionNanos = expansionNanos;
+			event.imageBytes = tileCache.getByteSize();
+			event.commit();
+		}
+		event = null;
+	}
+	
+	private void updateMetrics() {
+		long previewBytes = preview == null ? 0 : 4L * (long) preview.getWidth() * (long) preview.getHeight();
+		metrics.setImageByteSize(previewBytes + tileCache.getByteSize());
+	}
+}
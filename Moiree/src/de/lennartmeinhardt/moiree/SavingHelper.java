@@ -1,39 +1,56 @@
 package de.lennartmeinhardt.moiree;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import javax.imageio.ImageIO;
+import de.lennartmeinhardt.moiree.FlightRecorderEvents.ExportEvent;
+import de.lennartmeinhardt.moiree.SweepExporter.Format;
 
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.TextArea;
-import javafx.scene.image.Image;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Window;
 
 /**
  * Provides method for choosing a file to save to, and saving images.
+ * Images and transformation sweeps are saved by tasks that run one after another on a background thread.
  * 
  * @author Lennart Meinhardt
  */
 public class SavingHelper {
 	
+	// runs the queued exports, one at a time
+	private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "moiree-export");
+		thread.setDaemon(true);
+		return thread;
+	});
 	// file chooser to use for saving
 	private final FileChooser exportFileChooser = new FileChooser();
+	// directory chooser for PNG sequences
+	private final DirectoryChooser sequenceDirectoryChooser = new DirectoryChooser();
 	// localization
 	private final ResourceBundle bundle;
 	
 	// last file of the chooser, use as initial file on re-open
 	private File lastFile;
+	// encoding options of new exports
+	private PngOptions pngOptions = PngOptions.DEFAULT;
 	
 	
 	/**
@@ -48,19 +65,80 @@ public class SavingHelper {
 	}
 	
 	
+	public PngOptions getPngOptions() {
+		return pngOptions;
+	}
+	public void setPngOptions(PngOptions pngOptions) {
+		this.pngOptions = pngOptions;
+	}
+	
 	/**
-	 * Saves an image. The target file is chosen using a {@link FileChooser}.
+	 * Saves an image in the background. The image is rendered while it is written, so it does not have to fit
+	 * into memory. The target file is chosen using a {@link FileChooser}.
 	 * 
 	 * @param callingWindow the calling window
-	 * @param imageToSave the image to save
+	 * @param source the image to save
+	 * @return the queued export, or nothing if the chooser was aborted
 	 */
-	public void saveImage(Window callingWindow, Image imageToSave) {
+	public Optional<ExportTask> saveImage(Window callingWindow, ScanlineSource source) {
 		Optional<File> exportFile = getExportFile(callingWindow);
 		if(exportFile.isPresent()) {
 			// set the last file so re-opening is more comfortable
 			lastFile = exportFile.get().getParentFile();
-			saveImageToFile(imageToSave, exportFile.get());
+			return Optional.of(saveImageToFile(source, exportFile.get()));
 		}
+		return Optional.empty();
+	}
+	
+	/**
+	 * Saves a transformation sweep in the background. The target file, or the directory of a PNG sequence,
+	 * is chosen using a {@link FileChooser} or {@link DirectoryChooser}.
+	 * 
+	 * @param callingWindow the calling window
+	 * @param exporter the exporter of the frames
+	 * @param format the file format
+	 * @param frameDelayMillis the time each frame of an animated PNG is shown in milliseconds
+	 * @return the queued export, or nothing if the chooser was aborted
+	 */
+	public Optional<SweepExportTask> saveSweep(Window callingWindow, SweepExporter exporter, Format format, int frameDelayMillis) {
+		Optional<File> target;
+		if(format == Format.PNG_SEQUENCE) {
+			if(lastFile != null)
+				sequenceDirectoryChooser.setInitialDirectory(lastFile);
+			target = Optional.ofNullable(sequenceDirectoryChooser.showDialog(callingWindow));
+			target.ifPresent(directory -> lastFile = directory);
+			// the frames of an earlier sequence would be replaced
+			if(target.isPresent() && ! confirmReplacingFiles(callingWindow,
+					exporter.getExistingSequenceFiles(target.get().toPath(), SweepExportTask.SEQUENCE_PREFIX).size()))
+				return Optional.empty();
+		} else {
+			target = getExportFile(callingWindow);
+			target.ifPresent(file -> lastFile = file.getParentFile());
+		}
+		if(! target.isPresent())
+			return Optional.empty();
+		
+		SweepExportTask task = new SweepExportTask(exporter, format, target.get().toPath(), frameDelayMillis, bundle);
+		task.setOnFailed(ev -> showSavingErrorDialog(task.getException()));
+		exportExecutor.execute(task);
+		return Optional.of(task);
+	}
+	
+	/**
+	 * Ask the user whether existing files may be replaced.
+	 * 
+	 * @param callingWindow the calling window
+	 * @param fileCount the number of files that would be replaced
+	 * @return true if there are no such files, or the user confirmed replacing them
+	 */
+	private boolean confirmReplacingFiles(Window callingWindow, int fileCount) {
+		if(fileCount == 0)
+			return true;
+		Alert alert = new Alert(AlertType.CONFIRMATION);
+		alert.initOwner(callingWindow);
+		alert.setTitle(bundle.getString("replaceFilesTitle"));
+		alert.setHeaderText(String.format(bundle.getString("replaceFilesMessage"), fileCount));
+		return alert.showAndWait().filter(ButtonType.OK::equals).isPresent();
 	}
 	
 	/**
@@ -105,32 +183,82 @@ public class SavingHelper {
 	}
 	
 	/**
-	 * Save an image to a file.
+	 * Queue the export of an image to a file. Failures are shown in an error dialog.
 	 * 
-	 * @param fxImage the image to save
+	 * @param source the image to save
 	 * @param exportFile the file to save to
+	 * @return the queued export
 	 */
-	private void saveImageToFile(Image fxImage, File exportFile) {
-		// convert to swing image
-		BufferedImage awtImage = SwingFXUtils.fromFXImage(fxImage, null);
-		
-		try {
-			ImageIO.write(awtImage, "png", exportFile);
-		} catch (Exception e) {
-			showSavingErrorDialog(e);
+	private ExportTask saveImageToFile(ScanlineSource source, File exportFile) {
+		ExportTask task = new ExportTask(source, exportFile.toPath(), pngOptions, bundle);
+		task.setOnFailed(ev -> showSavingErrorDialog(task.getException()));
+		exportExecutor.execute(task);
+		return task;
+	}
+	
+	/**
+	 * Write an image to a PNG file on the calling thread. The image is read and encoded band by band,
+	 * so only a few rows are held in memory, regardless of the image size.
+	 * Images with a known small palette are written as indexed images.
+	 * 
+	 * @param source the image to write
+	 * @param file the file to write to
+	 * @param options the encoding options
+	 * @throws IOException if writing fails
+	 */
+	public static void writePng(ScanlineSource source, Path file, PngOptions options) throws IOException {
+		writePng(source, file, options.getPalette(source), options, (rowsWritten, height) -> {});
+	}
+	
+	/**
+	 * Write an image to a PNG file on the calling thread, like {@link #writePng(ScanlineSource, Path, PngOptions)},
+	 * reporting the progress after each band. A failed or cancelled write deletes the partially written file.
+	 * 
+	 * @param source the image to write
+	 * @param file the file to write to
+	 * @param palette the colors of an indexed image, or null for an RGBA image
+	 * @param options the encoding options
+	 * @param listener receives the progress, and may cancel writing
+	 * @throws IOException if writing fails
+	 * @throws CancellationException if the listener cancelled writing
+	 */
+	public static void writePng(ScanlineSource source, Path file, int[] palette, PngOptions options, ProgressListener listener)
+			throws IOException, CancellationException {
+		ExportEvent event = new ExportEvent();
+		event.begin();
+		int height = source.getHeight();
+		long bytesWritten;
+		try(PngWriter writer = new PngWriter(file, source.getWidth(), height, palette, options)) {
+			source.render((y, rows, argbs) -> {
+				writer.writeRows(argbs, 0, rows);
+				listener.rowsWritten(y + rows, height);
+			});
+			writer.finish();
+			bytesWritten = writer.getBytesWritten();
+		} catch(IOException | RuntimeException e) {
+			Files.deleteIfExists(file);
+			throw e;
 		}
+		event.commitExport(file, "PNG", source.getWidth(), height, 1, bytesWritten);
 	}
 	
 	/**
 	 * Show a dialog if saving went wrong.
 	 * 
-	 * @param e the exception to display
+	 * @param e the exception or error to display
 	 */
-	private void showSavingErrorDialog(Exception e) {
+	private void showSavingErrorDialog(Throwable e) {
 		showExceptionAlert(bundle.getString("error"), bundle.getString("savingErrorMessage"), e);
 	}
 	
-	private static void showExceptionAlert(String title, String content, Exception e) {
+	/**
+	 * Show a dialog with an exception and its expandable stack trace.
+	 * 
+	 * @param title the dialog title
+	 * @param content the explanation shown below the exception message
+	 * @param e the exception or error to display
+	 */
+	static void showExceptionAlert(String title, String content, Throwable e) {
 		Alert alert = new Alert(AlertType.ERROR);
 		alert.setTitle(title);
 		alert.setHeaderText(e.getMessage());
@@ -155,4 +283,20 @@ public class SavingHelper {
 
 		alert.showAndWait();
 	}
+	
+	
+	/**
+	 * Receives the progress of writing an image.
+	 */
+	@FunctionalInterface
+	public static interface ProgressListener {
+		/**
+		 * Called on the writing thread after a band of rows was written.
+		 * Throwing a {@link CancellationException} stops writing.
+		 * 
+		 * @param rowsWritten the number of rows written so far
+		 * @param height the number of rows of the image
+		 */
+		void rowsWritten(int rowsWritten, int height);
+	}
 }
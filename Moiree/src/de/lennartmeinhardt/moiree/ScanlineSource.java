@@ -0,0 +1,33 @@
+package de.lennartmeinhardt.moiree;
+
+import java.io.IOException;
+
+import de.lennartmeinhardt.moiree.Bands.BandConsumer;
+
+/**
+ * An image that can hand out its ARGB rows band by band, from top to bottom.
+ * 
+ * @author Lennart Meinhardt
+ */
+public interface ScanlineSource {
+	
+	int getWidth();
+	int getHeight();
+	
+	/**
+	 * Hand all rows of the image to a consumer, band by band in ascending order.
+	 * 
+	 * @param consumer the object receiving the bands
+	 * @throws IOException if the consumer throws it
+	 */
+	void render(BandConsumer consumer) throws IOException;
+	
+	/**
+	 * Get all colors of the image, if there are at most {@link PngWriter#MAX_PALETTE_SIZE} of them and they are known in advance.
+	 * 
+	 * @return the ARGB colors of the image, or null if unknown or too many
+	 */
+	default int[] getPalette() {
+		return null;
+	}
+}
@@ -0,0 +1,189 @@
+package de.lennartmeinhardt.moiree;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The averaged power spectrum of a Moir image and its dominant fringes, as computed by a {@link SpectrumAnalyzer}.
+ * <p>
+ * Frequencies are given in cycles per image pixel. Bins are addressed by signed indices from
+ * <code>-size / 2</code> to <code>size / 2 - 1</code>, bin <code>k</code> has the frequency <code>k / size</code>.
+ * 
+ * @author Lennart Meinhardt
+ */
+public final class Spectrum {
+	
+	private final int size;
+	// average power of the bins up to the radius in both directions, row after row from the lowest frequency
+	private final int radius;
+	private final double[] powers;
+	private final int tileCount;
+	private final double meanLuminance;
+	// the highest frequency searched for fringes
+	private final double maxFrequency;
+	private final List<FringePeak> peaks;
+	
+	
+	Spectrum(int size, double[] powers, int tileCount, double meanLuminance, double maxFrequency, List<FringePeak> peaks) {
+		this.size = size;
+		this.radius = getRadius(size, maxFrequency);
+		this.powers = powers;
+		this.tileCount = tileCount;
+		this.meanLuminance = meanLuminance;
+		this.maxFrequency = maxFrequency;
+		this.peaks = Collections.unmodifiableList(peaks);
+	}
+	
+	
+	/**
+	 * Get the size of the analyzed tiles, which is the number of bins per axis.
+	 * 
+	 * @return the tile size
+	 */
+	public int getSize() {
+		return size;
+	}
+	public int getTileCount() {
+		return tileCount;
+	}
+	/**
+	 * Get the average luminance of the image, 0 for black and 1 for white.
+	 * 
+	 * @return the mean luminance
+	 */
+	public double getMeanLuminance() {
+		return meanLuminance;
+	}
+	public double getMaxFrequency() {
+		return maxFrequency;
+	}
+	/**
+	 * Get the dominant fringes, strongest first. Of the two symmetric peaks of a fringe only one is listed.
+	 * 
+	 * @return the fringes
+	 */
+	public List<FringePeak> getPeaks() {
+		return peaks;
+	}
+	
+	/**
+	 * Get the largest bin index whose power is kept, in both directions. The bins cover the fringe frequencies.
+	 * 
+	 * @return the radius in bins
+	 */
+	public int getRadius() {
+		return radius;
+	}
+	
+	/**
+	 * Get the largest bin index whose power is kept for a spectrum, at least 2 and at most <code>size / 2 - 1</code>.
+	 * 
+	 * @param size the number of bins per axis
+	 * @param maxFrequency the highest fringe frequency
+	 * @return the radius in bins
+	 */
+	static int getRadius(int size, double maxFrequency) {
+		return (int) Math.max(2, Math.min(size / 2 - 1, Math.ceil(size * maxFrequency)));
+	}
+	
+	/**
+	 * Get the average power of a bin.
+	 * 
+	 * @param kx the signed bin index in x direction, at most the radius in magnitude
+	 * @param ky the signed bin index in y direction, at most the radius in magnitude
+	 * @return the power, in units of the unnormalized transform of the luminance
+	 * @throws IllegalArgumentException if the bin is beyond the radius
+	 */
+	public double getPower(int kx, int ky) throws IllegalArgumentException {
+		if(Math.abs(kx) > radius || Math.abs(ky) > radius)
+			throw new IllegalArgumentException("Bin beyond radius " + radius + ": " + kx + ", " + ky);
+		return powers[(ky + radius) * (2 * radius + 1) + kx + radius];
+	}
+	
+	/**
+	 * Get the direction of the lines of a fringe, which is perpendicular to its wave vector.
+	 * 
+	 * @param frequencyX the x component of the wave vector
+	 * @param frequencyY the y component of the wave vector
+	 * @return the angle in degrees from 0 to 180
+	 */
+	static double getFringeAngle(double frequencyX, double frequencyY) {
+		double angle = Math.toDegrees(Math.atan2(frequencyY, frequencyX)) + 90;
+		angle %= 180;
+		return angle < 0 ? angle + 180 : angle;
+	}
+	
+	
+	/**
+	 * A sinusoidal fringe of the Moir image.
+	 */
+	public static final class FringePeak {
+		
+		private final double frequencyX;
+		private final double frequencyY;
+		private final double amplitude;
+		private final double contrast;
+		
+		
+		FringePeak(double frequencyX, double frequencyY, double amplitude, double contrast) {
+			this.frequencyX = frequencyX;
+			this.frequencyY = frequencyY;
+			this.amplitude = amplitude;
+			this.contrast = contrast;
+		}
+		
+		
+		public double getFrequencyX() {
+			return frequencyX;
+		}
+		public double getFrequencyY() {
+			return frequencyY;
+		}
+		/**
+		 * Get the spatial frequency in cycles per pixel.
+		 * 
+		 * @return the frequency
+		 */
+		public double getFrequency() {
+			return Math.hypot(frequencyX, frequencyY);
+		}
+		/**
+		 * Get the distance of neighboring fringes in pixels, measured across the fringes.
+		 * 
+		 * @return the period
+		 */
+		public double getPeriod() {
+			return 1 / getFrequency();
+		}
+		/**
+		 * Get the direction of the fringe lines in degrees from 0 to 180, measured from the x axis towards the y axis.
+		 * As the y axis points down, positive angles are clockwise on screen.
+		 * 
+		 * @return the angle of the fringes
+		 */
+		public double getAngle() {
+			return getFringeAngle(frequencyX, frequencyY);
+		}
+		/**
+		 * Get the amplitude of the fringe's luminance wave.
+		 * 
+		 * @return the amplitude, 0 to 1
+		 */
+		public double getAmplitude() {
+			return amplitude;
+		}
+		/**
+		 * Get the contrast of the fringe, the amplitude of its fundamental wave relative to the mean luminance.
+		 * For sinusoidal fringes this is the Michelson contrast. Fringes with sharp edges may exceed 1.
+		 * 
+		 * @return the contrast
+		 */
+		public double getContrast() {
+			return contrast;
+		}
+		
+		@Override public String toString() {
+			return String.format("FringePeak[period=%.3f, angle=%.2f, contrast=%.4f]", getPeriod(), getAngle(), contrast);
+		}
+	}
+}
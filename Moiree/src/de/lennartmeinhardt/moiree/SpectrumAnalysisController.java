@@ -0,0 +1,120 @@
+package de.lennartmeinhardt.moiree;
+
+import java.net.URL;
+import java.util.ResourceBundle;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import de.lennartmeinhardt.moiree.ParserTextField.Parser;
+import de.lennartmeinhardt.moiree.Spectrum.FringePeak;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TitledPane;
+import javafx.scene.image.ImageView;
+
+/**
+ * Core class for managing the spectrum analysis pane. While the pane is expanded, the current Moir image is analyzed
+ * whenever it changes and its dominant fringes are listed.
+ * <p>
+ * Changes during a running analysis do not cancel it. The latest image is analyzed as soon as it is done,
+ * so results keep coming while the image is dragged.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class SpectrumAnalysisController implements Initializable {
+	
+	@FXML private TitledPane root;
+	@FXML private ComboBox<Integer> tileSizeCombobox;
+	@FXML private ParserTextField<Double> minPeriodInput;
+	@FXML private ImageView spectrumView;
+	@FXML private Label peaksLabel;
+	
+	private ResourceBundle resources;
+	private final SpectrumService spectrumService = new SpectrumService();
+	// the analyzer of the current settings, it keeps its buffers between analyses
+	private SpectrumAnalyzer analyzer;
+	// supplies the compositor of the current image, or null if there is none
+	private Supplier<MoireeCompositor> compositorSource = () -> null;
+	// the image changed during the running analysis
+	private boolean analysisPending;
+	
+	
+	@Override public void initialize(URL location, ResourceBundle resources) {
+		this.resources = resources;
+		
+		tileSizeCombobox.getItems().addAll(256, 512, 1024, 2048);
+		tileSizeCombobox.getSelectionModel().select(Integer.valueOf(SpectrumAnalyzer.DEFAULT_TILE_SIZE));
+		Predicate<Double> minPeriodChecker = d -> d >= 2;
+		minPeriodInput.setParser(Parser.DOUBLE_PARSER.withVeto(minPeriodChecker));
+		
+		tileSizeCombobox.valueProperty().addListener(obs -> requestAnalysis());
+		minPeriodInput.parsedValueProperty().addListener(obs -> requestAnalysis());
+		root.expandedProperty().addListener(obs -> requestAnalysis());
+		
+		spectrumService.setOnSucceeded(ev -> {
+			showAnalysis(spectrumService.getValue());
+			analyzePending();
+		});
+		spectrumService.setOnFailed(ev -> {
+			peaksLabel.setText(String.valueOf(spectrumService.getException().getMessage()));
+			analyzePending();
+		});
+	}
+	
+	/**
+	 * Set the source of the analyzed images.
+	 * 
+	 * @param compositorSource supplies the compositor of the current image, or null if there is none
+	 */
+	public void setCompositorSource(Supplier<MoireeCompositor> compositorSource) {
+		this.compositorSource = compositorSource;
+		requestAnalysis();
+	}
+	
+	public boolean isExpanded() {
+		return root.isExpanded();
+	}
+	public void setExpanded(boolean value) {
+		root.setExpanded(value);
+	}
+	
+	/**
+	 * Analyze the current image if the pane is expanded. Must be called on the FX thread whenever the image changes.
+	 */
+	public void requestAnalysis() {
+		if(! root.isExpanded() || ! minPeriodInput.isParseSuccessful())
+			return;
+		if(spectrumService.isRunning()) {
+			analysisPending = true;
+			return;
+		}
+		MoireeCompositor compositor = compositorSource.get();
+		if(compositor == null)
+			return;
+		analysisPending = false;
+		if(analyzer == null || analyzer.getTileSize() != tileSizeCombobox.getValue() || analyzer.getMinPeriod() != minPeriodInput.getParsedValue())
+			analyzer = new SpectrumAnalyzer(tileSizeCombobox.getValue(), minPeriodInput.getParsedValue(), SpectrumAnalyzer.DEFAULT_MAX_PEAKS);
+		spectrumService.analyze(compositor, analyzer);
+	}
+	
+	private void analyzePending() {
+		if(analysisPending)
+			requestAnalysis();
+	}
+	
+	private void showAnalysis(SpectrumService.Analysis analysis) {
+		Spectrum spectrum = analysis.getSpectrum();
+		spectrumView.setImage(analysis.getImage());
+		
+		StringBuilder text = new StringBuilder(String.format(resources.getString("spectrumTiles"), spectrum.getTileCount(), spectrum.getSize()));
+		if(spectrum.getPeaks().isEmpty())
+			text.append('\n').append(resources.getString("spectrumNoPeaks"));
+		int number = 1;
+		for(FringePeak peak : spectrum.getPeaks())
+			text.append('\n').append(String.format(resources.getString("spectrumPeak"),
+					number++, peak.getPeriod(), peak.getAngle(), 100 * peak.getContrast()));
+		peaksLabel.setText(text.toString());
+	}
+}
@@ -0,0 +1,403 @@
+package de.lennartmeinhardt.moiree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import de.lennartmeinhardt.moiree.Spectrum.FringePeak;
+
+/**
+ * Computes the power spectrum of a Moir image and finds its dominant fringes.
+ * <p>
+ * The image is rendered black on white and its luminance is split into overlapping square tiles. Each tile gets
+ * its mean removed and a Hann window applied before it is transformed, and the powers of all tiles are averaged
+ * (Welch's method). The luminances are real, so two tiles are transformed at once as the real and imaginary parts
+ * of one complex transform. Pairs of tiles are transformed in parallel, every worker reuses its own buffers.
+ * The buffers and the luminances are kept for the next analysis and only replaced when the sizes change,
+ * so repeated analyses of an image being dragged allocate little besides the result. An analyzer runs one analysis at a time.
+ * Images larger than {@link #MAX_REGION_SIZE} in a direction are analyzed in a central region of that size, which holds
+ * plenty of periods of any fringe and keeps the luminances of huge images small.
+ * <p>
+ * Fringes are the local maxima of the averaged spectrum at frequencies below those of the pattern itself,
+ * that is at periods of at least the minimum period. Their frequency is refined between bins, and their amplitude
+ * is taken from the power of the window's main lobe.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class SpectrumAnalyzer {
+	
+	public static final int DEFAULT_TILE_SIZE = 512;
+	public static final double DEFAULT_MIN_PERIOD = 10;
+	public static final int DEFAULT_MAX_PEAKS = 5;
+	// largest analyzed region along each axis
+	public static final int MAX_REGION_SIZE = 4096;
+	
+	// weakest reported fringe, relative to the power of the strongest
+	private static final double MIN_RELATIVE_POWER = .01;
+	// half width of the bins summed for the power of a fringe, the Hann main lobe and its shoulders
+	private static final int LOBE_RADIUS = 2;
+	// maximum size of the buffers of all workers
+	private static final long MAX_BUFFER_BYTES = 256L << 20;
+	
+	private final int tileSize;
+	private final double minPeriod;
+	private final int maxPeaks;
+	
+	// buffers kept between analyses, the tile buffers are replaced when the tile size changes
+	private Fft fft;
+	private double[] window;
+	private double[] powers;
+	private WorkerBuffers[] workerBuffers;
+	private float[] luminances;
+	// the rendered bands of the luminance workers
+	private final int[][] bands = new int[ForkJoinPool.getCommonPoolParallelism() + 1][];
+	
+	
+	/**
+	 * Create a new {@link SpectrumAnalyzer} with default settings.
+	 */
+	public SpectrumAnalyzer() {
+		this(DEFAULT_TILE_SIZE, DEFAULT_MIN_PERIOD, DEFAULT_MAX_PEAKS);
+	}
+	
+	/**
+	 * Create a new {@link SpectrumAnalyzer}.
+	 * 
+	 * @param tileSize the size of the transformed tiles, a power of two. Larger tiles resolve longer periods more
+	 * precisely, smaller tiles average more of them.
+	 * @param minPeriod the shortest period of a fringe in pixels, shorter periods belong to the pattern
+	 * @param maxPeaks the maximum number of reported fringes
+	 * @throws IllegalArgumentException if a parameter is invalid
+	 */
+	public SpectrumAnalyzer(int tileSize, double minPeriod, int maxPeaks) throws IllegalArgumentException {
+		if(tileSize < 8 || Integer.bitCount(tileSize) != 1)
+			throw new IllegalArgumentException("Invalid tile size " + tileSize);
+		if(! (minPeriod >= 2))
+			throw new IllegalArgumentException("Invalid minimum period " + minPeriod);
+		if(maxPeaks <= 0)
+			throw new IllegalArgumentException("Invalid peak count " + maxPeaks);
+		this.tileSize = tileSize;
+		this.minPeriod = minPeriod;
+		this.maxPeaks = maxPeaks;
+	}
+	
+	
+	public int getTileSize() {
+		return tileSize;
+	}
+	public double getMinPeriod() {
+		return minPeriod;
+	}
+	public int getMaxPeaks() {
+		return maxPeaks;
+	}
+	
+	/**
+	 * Analyze a Moir image. The colors of the compositor are ignored, the image is always analyzed black on white.
+	 * 
+	 * @param compositor the compositor of the image
+	 * @param cancelled checked regularly, the analysis stops if it returns true
+	 * @return the spectrum
+	 * @throws CancellationException if the analysis was cancelled
+	 * @throws IllegalArgumentException if the image is smaller than 8 pixels in a direction
+	 */
+	public synchronized Spectrum analyze(MoireeCompositor compositor, BooleanSupplier cancelled) throws CancellationException, IllegalArgumentException {
+		if(compositor.getWidth() < 8 || compositor.getHeight() < 8)
+			throw new IllegalArgumentException("Image too small for analysis: " + compositor.getWidth() + "x" + compositor.getHeight());
+		int width = Math.min(compositor.getWidth(), MAX_REGION_SIZE);
+		int height = Math.min(compositor.getHeight(), MAX_REGION_SIZE);
+		int size = Math.min(tileSize, Integer.highestOneBit(Math.min(width, height)));
+		prepareBuffers(size);
+		
+		renderLuminances(compositor, width, height, cancelled);
+		
+		// half overlapping tiles, spread evenly so that they cover the whole region
+		int[] tileXs = getTileOffsets(width, size);
+		int[] tileYs = getTileOffsets(height, size);
+		int tileCount = tileXs.length * tileYs.length;
+		
+		int pairCount = (tileCount + 1) / 2;
+		int workers = Math.min(pairCount, workerBuffers.length);
+		for(int worker = 0; worker < workers; worker++) {
+			if(workerBuffers[worker] == null)
+				workerBuffers[worker] = new WorkerBuffers(size);
+			// the last element sums the mean luminances of the tiles
+			Arrays.fill(workerBuffers[worker].sum, 0);
+		}
+		// each worker sums the powers of its tiles
+		IntStream.range(0, workers).parallel().forEach(worker -> {
+			WorkerBuffers buffers = workerBuffers[worker];
+			double[] sum = buffers.sum;
+			for(int pair = worker; pair < pairCount; pair += workers) {
+				if(cancelled.getAsBoolean())
+					throw new CancellationException();
+				int first = 2 * pair;
+				int second = first + 1;
+				sum[size * size] += loadTile(luminances, width, tileXs[first % tileXs.length], tileYs[first / tileXs.length], window, buffers.re);
+				if(second < tileCount)
+					sum[size * size] += loadTile(luminances, width, tileXs[second % tileXs.length], tileYs[second / tileXs.length], window, buffers.im);
+				else
+					Arrays.fill(buffers.im, 0);
+				fft.transform2d(buffers.re, buffers.im, buffers.columnRe, buffers.columnIm);
+				addPairPowers(buffers.re, buffers.im, size, sum);
+			}
+		});
+		
+		Arrays.fill(powers, 0);
+		double luminanceSum = 0;
+		for(int worker = 0; worker < workers; worker++) {
+			double[] sum = workerBuffers[worker].sum;
+			for(int i = 0; i < powers.length; i++)
+				powers[i] += sum[i];
+			luminanceSum += sum[powers.length];
+		}
+		for(int i = 0; i < powers.length; i++)
+			powers[i] /= tileCount;
+		double meanLuminance = luminanceSum / tileCount;
+		
+		double windowSquares = 0;
+		for(double w : window)
+			windowSquares += w * w;
+		double maxFrequency = 1 / minPeriod;
+		return new Spectrum(size, getFringePowers(size, maxFrequency), tileCount, meanLuminance, maxFrequency,
+				findPeaks(powers, size, windowSquares * windowSquares, meanLuminance));
+	}
+	
+	/**
+	 * Make sure the buffers fit tiles of given size. Buffers of another size are dropped.
+	 */
+	private void prepareBuffers(int size) {
+		if(fft != null && fft.getSize() == size)
+			return;
+		fft = new Fft(size);
+		window = new double[size];
+		for(int i = 0; i < size; i++)
+			window[i] = .5 - .5 * Math.cos(2 * Math.PI * i / size);
+		powers = new double[size * size];
+		long workerBytes = 3L * size * size * Double.BYTES;
+		workerBuffers = new WorkerBuffers[(int) Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() + 1, MAX_BUFFER_BYTES / workerBytes))];
+	}
+	
+	/**
+	 * Copy the powers of the bins up to a frequency, in both directions, for the spectrum. The analyzer's own powers
+	 * are overwritten by the next analysis.
+	 * 
+	 * @return the powers, row after row from the lowest to the highest frequency, see {@link Spectrum#getRadius(int, double)}
+	 */
+	private double[] getFringePowers(int size, double maxFrequency) {
+		int radius = Spectrum.getRadius(size, maxFrequency);
+		int side = 2 * radius + 1;
+		double[] fringePowers = new double[side * side];
+		for(int ky = -radius; ky <= radius; ky++)
+			for(int kx = -radius; kx <= radius; kx++)
+				fringePowers[(ky + radius) * side + kx + radius] = getPower(powers, size, kx, ky);
+		return fringePowers;
+	}
+	
+	/**
+	 * Render the central region of the image black on white and convert it to luminances. Every worker renders
+	 * its bands into its own buffer.
+	 */
+	private void renderLuminances(MoireeCompositor compositor, int width, int height, BooleanSupplier cancelled) {
+		MoireeCompositor blackOnWhite = new MoireeCompositor(compositor.getSampler(), compositor.getPatternWidth(), compositor.getPatternHeight(),
+				compositor.getTransform(), compositor.getSampling(), 0xff000000, 0xffffffff, compositor.getZoom());
+		int left = (blackOnWhite.getWidth() - width) / 2;
+		int top = (blackOnWhite.getHeight() - height) / 2;
+		int pixels = width * height;
+		if(luminances == null || luminances.length != pixels)
+			luminances = new float[pixels];
+		
+		int bandHeight = Bands.getBandHeight(width, height);
+		int bandCount = (height + bandHeight - 1) / bandHeight;
+		int workers = Math.min(bandCount, bands.length);
+		for(int worker = 0; worker < workers; worker++)
+			if(bands[worker] == null || bands[worker].length < width * bandHeight)
+				bands[worker] = new int[width * bandHeight];
+		IntStream.range(0, workers).parallel().forEach(worker -> {
+			int[] argbs = bands[worker];
+			for(int band = worker; band < bandCount; band += workers) {
+				if(cancelled.getAsBoolean())
+					throw new CancellationException();
+				int y = band * bandHeight;
+				int rows = Math.min(bandHeight, height - y);
+				blackOnWhite.renderRegion(left, top + y, width, rows, argbs, 0);
+				int offset = y * width;
+				for(int i = 0; i < rows * width; i++)
+					luminances[offset + i] = (argbs[i] & 0xff) / 255f;
+			}
+		});
+	}
+	
+	/**
+	 * Get the offsets of tiles overlapping by half along one axis, the last tile ending at the image border.
+	 */
+	private static int[] getTileOffsets(int length, int size) {
+		int count = 1 + (2 * (length - size) + size - 1) / size;
+		int[] offsets = new int[count];
+		for(int i = 1; i < count; i++)
+			offsets[i] = (int) Math.round((double) i * (length - size) / (count - 1));
+		return offsets;
+	}
+	
+	/**
+	 * Load one tile of luminances with its mean removed and the window applied.
+	 * 
+	 * @param target the array to load the tile into, row after row
+	 * @return the windowed mean luminance of the tile
+	 */
+	private static double loadTile(float[] luminances, int width, int tileX, int tileY, double[] window, double[] target) {
+		int size = window.length;
+		double weightedSum = 0;
+		double weights = 0;
+		for(int y = 0; y < size; y++) {
+			int source = (tileY + y) * width + tileX;
+			for(int x = 0; x < size; x++) {
+				double weight = window[y] * window[x];
+				weightedSum += weight * luminances[source + x];
+				weights += weight;
+			}
+		}
+		double mean = weightedSum / weights;
+		
+		for(int y = 0; y < size; y++) {
+			int source = (tileY + y) * width + tileX;
+			for(int x = 0; x < size; x++)
+				target[y * size + x] = (luminances[source + x] - mean) * window[y] * window[x];
+		}
+		return mean;
+	}
+	
+	/**
+	 * Add the powers of two real tiles that were transformed together as real and imaginary part. The transform of
+	 * the real part is (X(k) + conj X(-k)) / 2, the one of the imaginary part is (X(k) - conj X(-k)) / 2i.
+	 */
+	private static void addPairPowers(double[] re, double[] im, int size, double[] sum) {
+		int mask = size - 1;
+		for(int ky = 0; ky < size; ky++) {
+			int row = ky * size;
+			int mirroredRow = (-ky & mask) * size;
+			for(int kx = 0; kx < size; kx++) {
+				int k = row + kx;
+				int mirrored = mirroredRow + (-kx & mask);
+				double sumRe = re[k] + re[mirrored];
+				double differenceIm = im[k] - im[mirrored];
+				double differenceRe = re[k] - re[mirrored];
+				double sumIm = im[k] + im[mirrored];
+				sum[k] += .25 * (sumRe * sumRe + differenceIm * differenceIm + differenceRe * differenceRe + sumIm * sumIm);
+			}
+		}
+	}
+	
+	/**
+	 * Find the strongest local maxima of the spectrum within the fringe frequencies.
+	 * 
+	 * @param powers the powers of the bins
+	 * @param size the number of bins per axis
+	 * @param windowSquares the sum of the squared weights of the two-dimensional window
+	 * @param meanLuminance the mean luminance of the image
+	 */
+	private List<FringePeak> findPeaks(double[] powers, int size, double windowSquares, double meanLuminance) {
+		// bins near the mean carry its leakage, not fringes
+		int maxBin = Math.min(size / 2 - 1 - LOBE_RADIUS, (int) (size / minPeriod));
+		double maxBinSquared = (double) size / minPeriod * size / minPeriod;
+		
+		List<double[]> candidates = new ArrayList<>();
+		// of the symmetric peaks only the upper half plane is searched
+		for(int ky = 0; ky <= maxBin; ky++) {
+			for(int kx = -maxBin; kx <= maxBin; kx++) {
+				if(ky == 0 && kx <= 0 || Math.abs(kx) <= 1 && ky <= 1 || kx * kx + ky * ky > maxBinSquared)
+					continue;
+				if(isLocalMaximum(powers, size, kx, ky))
+					candidates.add(new double[] {kx, ky, getLobePower(powers, size, kx, ky)});
+			}
+		}
+		candidates.sort((a, b) -> Double.compare(b[2], a[2]));
+		
+		List<FringePeak> peaks = new ArrayList<>();
+		for(double[] candidate : candidates) {
+			if(peaks.size() == maxPeaks || candidate[2] < MIN_RELATIVE_POWER * candidates.get(0)[2])
+				break;
+			int kx = (int) candidate[0];
+			int ky = (int) candidate[1];
+			double center = getPower(powers, size, kx, ky);
+			double fx = (kx + interpolate(getPower(powers, size, kx - 1, ky), center, getPower(powers, size, kx + 1, ky))) / size;
+			double fy = (ky + interpolate(getPower(powers, size, kx, ky - 1), center, getPower(powers, size, kx, ky + 1))) / size;
+			// by Parseval, half the power of a wave a * cos lies in each of its two peaks
+			double amplitude = 2 * Math.sqrt(candidate[2] / ((double) size * size * windowSquares));
+			double contrast = meanLuminance > 0 ? amplitude / meanLuminance : 0;
+			peaks.add(new FringePeak(fx, fy, amplitude, contrast));
+		}
+		return peaks;
+	}
+	
+	/**
+	 * Get the power of a bin by its signed indices.
+	 */
+	static double getPower(double[] powers, int size, int kx, int ky) {
+		int mask = size - 1;
+		return powers[(ky & mask) * size + (kx & mask)];
+	}
+	
+	private static boolean isLocalMaximum(double[] powers, int size, int kx, int ky) {
+		double power = getPower(powers, size, kx, ky);
+		if(power <= 0)
+			return false;
+		// a fringe is the maximum of its whole lobe, weaker maxima nearby are its leakage
+		for(int dy = -LOBE_RADIUS; dy <= LOBE_RADIUS; dy++) {
+			for(int dx = -LOBE_RADIUS; dx <= LOBE_RADIUS; dx++) {
+				double neighbor = getPower(powers, size, kx + dx, ky + dy);
+				// of equal neighbors only the first in scan order counts
+				if(neighbor > power || neighbor == power && (dy < 0 || dy == 0 && dx < 0))
+					return false;
+			}
+		}
+		return true;
+	}
+	
+	private static double getLobePower(double[] powers, int size, int kx, int ky) {
+		double power = 0;
+		for(int dy = -LOBE_RADIUS; dy <= LOBE_RADIUS; dy++)
+			for(int dx = -LOBE_RADIUS; dx <= LOBE_RADIUS; dx++)
+				power += getPower(powers, size, kx + dx, ky + dy);
+		return power;
+	}
+	
+	/**
+	 * Get the offset of a peak from its center bin by the ratio of the larger neighbor's magnitude to the center's.
+	 * For a Hann windowed wave the ratio r is exactly (1 + d) / (2 - d) for the offset d.
+	 * 
+	 * @return the offset, from -0.5 to 0.5
+	 */
+	private static double interpolate(double before, double center, double after) {
+		double ratio = Math.sqrt(Math.max(before, after) / center);
+		double offset = Math.max(0, Math.min(.5, (2 * ratio - 1) / (ratio + 1)));
+		return after >= before ? offset : -offset;
+	}
+	
+	/**
+	 * The buffers of one worker transforming tiles of one size.
+	 */
+	private static final class WorkerBuffers {
+		
+		// the pair of tiles as real and imaginary part, and a column of the two-dimensional transform
+		final double[] re;
+		final double[] im;
+		final double[] columnRe;
+		final double[] columnIm;
+		// the summed powers of the worker's tiles, and their mean luminances in the last element
+		final double[] sum;
+		
+		
+		WorkerBuffers(int size) {
+			re = new double[size * size];
+			im = new double[size * size];
+			columnRe = new double[size];
+			columnIm = new double[size];
+			sum = new double[size * size + 1];
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package de.lennartmeinhardt.moiree;
+
+import de.lennartmeinhardt.moiree.Spectrum.FringePeak;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Analyzes the spectrum of a Moir image in the background and draws the analyzed frequencies as an image.
+ * <p>
+ * The image shows the logarithmic power of the frequencies up to the highest fringe frequency, with the zero frequency
+ * in the center and y pointing down like in the analyzed image. The fringes are marked in red.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class SpectrumService extends Service<SpectrumService.Analysis> {
+	
+	private static final int ARGB_MARK = 0xffff0000;
+	// powers more than this many decades below the strongest are drawn black
+	private static final double DISPLAY_DECADES = 8;
+	
+	// compositor and analyzer of the next analysis
+	private MoireeCompositor compositor;
+	private SpectrumAnalyzer analyzer;
+	
+	
+	/**
+	 * Start analyzing an image, cancelling the running analysis. Must be called on the FX thread.
+	 * 
+	 * @param compositor the compositor of the image
+	 * @param analyzer the analyzer to use
+	 */
+	public void analyze(MoireeCompositor compositor, SpectrumAnalyzer analyzer) {
+		this.compositor = compositor;
+		this.analyzer = analyzer;
+		restart();
+	}
+	
+	@Override protected Task<Analysis> createTask() {
+		MoireeCompositor taskCompositor = compositor;
+		SpectrumAnalyzer taskAnalyzer = analyzer;
+		return new Task<Analysis>() {
+			@Override protected Analysis call() throws Exception {
+				Spectrum spectrum = taskAnalyzer.analyze(taskCompositor, this::isCancelled);
+				return new Analysis(spectrum, createSpectrumImage(spectrum));
+			}
+		};
+	}
+	
+	/**
+	 * Draw the powers of the fringe frequencies of a spectrum.
+	 * 
+	 * @param spectrum the spectrum to draw
+	 * @return the image
+	 */
+	public static WritableImage createSpectrumImage(Spectrum spectrum) {
+		int size = spectrum.getSize();
+		int radius = spectrum.getRadius();
+		int side = 2 * radius + 1;
+		
+		double[] logs = new double[side * side];
+		double maxLog = Double.NEGATIVE_INFINITY;
+		for(int ky = -radius; ky <= radius; ky++) {
+			for(int kx = -radius; kx <= radius; kx++) {
+				double log = Math.log10(spectrum.getPower(kx, ky));
+				logs[(ky + radius) * side + kx + radius] = log;
+				// the bins around zero only hold what is left of the removed mean
+				if(Math.abs(kx) > 1 || Math.abs(ky) > 1)
+					maxLog = Math.max(maxLog, log);
+			}
+		}
+		
+		int[] argbs = new int[side * side];
+		double minLog = maxLog - DISPLAY_DECADES;
+		for(int i = 0; i < argbs.length; i++) {
+			double brightness = (logs[i] - minLog) / DISPLAY_DECADES;
+			int gray = (int) Math.round(255 * Math.max(0, Math.min(1, brightness)));
+			argbs[i] = 0xff000000 | gray << 16 | gray << 8 | gray;
+		}
+		for(FringePeak peak : spectrum.getPeaks()) {
+			int kx = (int) Math.round(peak.getFrequencyX() * size);
+			int ky = (int) Math.round(peak.getFrequencyY() * size);
+			mark(argbs, side, radius + kx, radius + ky);
+			mark(argbs, side, radius - kx, radius - ky);
+		}
+		
+		WritableImage image = new WritableImage(side, side);
+		image.getPixelWriter().setPixels(0, 0, side, side, PixelFormat.getIntArgbInstance(), argbs, 0, side);
+		return image;
+	}
+	
+	/**
+	 * Mark a bin by a cross around it, leaving the bin itself visible.
+	 */
+	private static void mark(int[] argbs, int side, int x, int y) {
+		int[][] offsets = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+		for(int[] offset : offsets) {
+			int markX = x + offset[0];
+			int markY = y + offset[1];
+			if(markX >= 0 && markY >= 0 && markX < side && markY < side)
+				argbs[markY * side + markX] = ARGB_MARK;
+		}
+	}
+	
+	
+	/**
+	 * An analyzed spectrum together with its image.
+	 */
+	public static final class Analysis {
+		
+		private final Spectrum spectrum;
+		private final WritableImage image;
+		
+		
+		private Analysis(Spectrum spectrum, WritableImage image) {
+			this.spectrum = spectrum;
+			this.image = image;
+		}
+		
+		
+		public Spectrum getSpectrum() {
+			return spectrum;
+		}
+		public WritableImage getImage() {
+			return image;
+		}
+	}
+}
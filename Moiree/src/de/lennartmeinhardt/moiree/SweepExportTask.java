@@ -0,0 +1,74 @@
+package de.lennartmeinhardt.moiree;
+
+import java.nio.file.Path;
+import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+
+import de.lennartmeinhardt.moiree.FlightRecorderEvents.ExportEvent;
+import de.lennartmeinhardt.moiree.SweepExporter.Format;
+import javafx.concurrent.Task;
+
+/**
+ * Background task that exports a transformation sweep, either as a sequence of PNG files or as an animated PNG.
+ * Progress is reported per written frame.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class SweepExportTask extends Task<Path> {
+	
+	/** The beginning of the file names of a PNG sequence. */
+	public static final String SEQUENCE_PREFIX = "moiree_";
+	
+	private final SweepExporter exporter;
+	private final Format format;
+	// the directory of a PNG sequence, or the file of an animated PNG
+	private final Path target;
+	private final int frameDelayMillis;
+	private final ResourceBundle bundle;
+	
+	
+	/**
+	 * Create a new {@link SweepExportTask}.
+	 * 
+	 * @param exporter the exporter of the frames
+	 * @param format the file format
+	 * @param target the directory of a PNG sequence, or the file of an animated PNG
+	 * @param frameDelayMillis the time each frame of an animated PNG is shown in milliseconds
+	 * @param bundle the localization for progress messages
+	 */
+	public SweepExportTask(SweepExporter exporter, Format format, Path target, int frameDelayMillis, ResourceBundle bundle) {
+		this.exporter = exporter;
+		this.format = format;
+		this.target = target;
+		this.frameDelayMillis = frameDelayMillis;
+		this.bundle = bundle;
+		updateTitle(target.getFileName().toString());
+		updateMessage(bundle.getString("exportQueued"));
+	}
+	
+	
+	public Path getTarget() {
+		return target;
+	}
+	
+	@Override protected Path call() throws Exception {
+		ExportEvent event = new ExportEvent();
+		event.begin();
+		updateMessage(bundle.getString("exportEncoding"));
+		SweepExporter.ProgressListener listener = (framesWritten, frameCount) -> {
+			if(isCancelled())
+				throw new CancellationException();
+			updateProgress(framesWritten, frameCount);
+			updateMessage(String.format(bundle.getString("exportFrames"), framesWritten, frameCount));
+		};
+		long bytesWritten;
+		if(format == Format.APNG)
+			bytesWritten = exporter.exportApng(target, frameDelayMillis, listener);
+		else
+			bytesWritten = exporter.exportPngSequence(target, SEQUENCE_PREFIX, listener);
+		
+		event.commitExport(target, format.name(), exporter.getWidth(), exporter.getHeight(), exporter.getSweep().getFrameCount(), bytesWritten);
+		updateMessage(bundle.getString("exportDone"));
+		return target;
+	}
+}
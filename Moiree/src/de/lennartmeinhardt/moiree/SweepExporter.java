@@ -0,0 +1,297 @@
+package de.lennartmeinhardt.moiree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports the frames of a {@link TransformSweep}, either as numbered PNG files or as one animated PNG.
+ * <p>
+ * Frames are split into bands of rows, which are rendered concurrently on a pool of worker threads. Small frames are
+ * rendered several at once, large frames keep all workers busy on their own bands. The bands are handed to the writer
+ * strictly in order and streamed to the file. The number of rendered bands waiting for the writer is bounded,
+ * so memory use depends neither on the length of the sweep nor on the frame size.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class SweepExporter {
+	
+	/**
+	 * The file formats of a sweep.
+	 */
+	public static enum Format {
+		PNG_SEQUENCE,
+		APNG;
+	}
+	
+	// maximum number of pixels of rendered bands waiting for the writer
+	private static final long MAX_PENDING_PIXELS = 1L << 25;
+	
+	private final MoireeCompositor compositor;
+	private final TransformSweep sweep;
+	private final PngOptions options;
+	private final int threads;
+	
+	
+	/**
+	 * Create a new {@link SweepExporter} using one worker thread per processor.
+	 * 
+	 * @param compositor the compositor of the frames, its transformation is replaced by those of the sweep
+	 * @param sweep the transformations of the frames
+	 * @param options the PNG encoding options
+	 */
+	public SweepExporter(MoireeCompositor compositor, TransformSweep sweep, PngOptions options) {
+		this(compositor, sweep, options, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Create a new {@link SweepExporter}.
+	 * 
+	 * @param compositor the compositor of the frames, its transformation is replaced by those of the sweep
+	 * @param sweep the transformations of the frames
+	 * @param options the PNG encoding options
+	 * @param threads the number of worker threads rendering frames
+	 */
+	public SweepExporter(MoireeCompositor compositor, TransformSweep sweep, PngOptions options, int threads) {
+		if(threads <= 0)
+			throw new IllegalArgumentException("Invalid thread count " + threads);
+		this.compositor = compositor;
+		this.sweep = sweep;
+		this.options = options;
+		this.threads = threads;
+	}
+	
+	
+	public TransformSweep getSweep() {
+		return sweep;
+	}
+	public int getWidth() {
+		return compositor.getWidth();
+	}
+	public int getHeight() {
+		return compositor.getHeight();
+	}
+	
+	/**
+	 * Get the file a frame of a PNG sequence is written to, named by the prefix followed by the zero padded frame number.
+	 * 
+	 * @param directory the directory of the sequence
+	 * @param prefix the beginning of the file names
+	 * @param frame the frame index
+	 * @return the file of the frame
+	 */
+	public Path getSequenceFile(Path directory, String prefix, int frame) {
+		int digits = Math.max(4, Integer.toString(sweep.getFrameCount() - 1).length());
+		return directory.resolve(String.format("%s%0" + digits + "d.png", prefix, frame));
+	}
+	
+	/**
+	 * Get the files of a PNG sequence that exist already, they would be replaced by an export.
+	 * 
+	 * @param directory the directory of the sequence
+	 * @param prefix the beginning of the file names
+	 * @return the existing files in frame order
+	 */
+	public List<Path> getExistingSequenceFiles(Path directory, String prefix) {
+		List<Path> existing = new ArrayList<>();
+		for(int frame = 0; frame < sweep.getFrameCount(); frame++) {
+			Path file = getSequenceFile(directory, prefix, frame);
+			if(Files.exists(file))
+				existing.add(file);
+		}
+		return existing;
+	}
+	
+	/**
+	 * Write every frame to its own PNG file, see {@link #getSequenceFile(Path, String, int)}. Existing files are replaced.
+	 * A frame that could not be written completely is deleted.
+	 * 
+	 * @param directory the directory to write to
+	 * @param prefix the beginning of the file names
+	 * @param listener notified after each written frame
+	 * @return the number of bytes written to all files
+	 * @throws IOException if writing fails
+	 * @throws CancellationException if the listener cancelled the export
+	 */
+	public long exportPngSequence(Path directory, String prefix, ProgressListener listener) throws IOException, CancellationException {
+		int[] palette = options.getPalette(compositor);
+		int height = compositor.getHeight();
+		// the frame being written and its file
+		PngWriter[] frameWriter = new PngWriter[1];
+		Path[] frameFile = new Path[1];
+		long[] bytesWritten = new long[1];
+		try {
+			renderFrames((frame, y, rows, argbs) -> {
+				if(y == 0) {
+					frameFile[0] = getSequenceFile(directory, prefix, frame);
+					frameWriter[0] = new PngWriter(frameFile[0], compositor.getWidth(), height, palette, options);
+				}
+				frameWriter[0].writeRows(argbs, 0, rows);
+				if(y + rows == height) {
+					frameWriter[0].finish();
+					bytesWritten[0] += frameWriter[0].getBytesWritten();
+					frameWriter[0] = null;
+				}
+			}, listener);
+		} catch(IOException | RuntimeException e) {
+			if(frameWriter[0] != null) {
+				abort(frameWriter[0]);
+				Files.deleteIfExists(frameFile[0]);
+			}
+			throw e;
+		}
+		return bytesWritten[0];
+	}
+	
+	/**
+	 * Write all frames to one animated PNG that loops forever. A file that could not be written completely is deleted.
+	 * 
+	 * @param file the file to write to
+	 * @param frameDelayMillis the time each frame is shown in milliseconds
+	 * @param listener notified after each written frame
+	 * @return the number of bytes written
+	 * @throws IOException if writing fails
+	 * @throws CancellationException if the listener cancelled the export
+	 */
+	public long exportApng(Path file, int frameDelayMillis, ProgressListener listener) throws IOException, CancellationException {
+		PngWriter writer = new PngWriter(file, compositor.getWidth(), compositor.getHeight(), options.getPalette(compositor), options,
+				sweep.getFrameCount(), frameDelayMillis);
+		try {
+			renderFrames((frame, y, rows, argbs) -> writer.writeRows(argbs, 0, rows), listener);
+			writer.finish();
+			return writer.getBytesWritten();
+		} catch(IOException | RuntimeException e) {
+			abort(writer);
+			Files.deleteIfExists(file);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Close the file of an incomplete image. Its content does not matter, the file is deleted afterwards.
+	 */
+	private static void abort(PngWriter writer) {
+		try {
+			writer.close();
+		} catch(IOException e) {
+			// the image is incomplete
+		}
+	}
+	
+	/**
+	 * Render all frames in bands of rows on the worker pool and hand the bands to the writer in order on the calling thread.
+	 * 
+	 * @param writer receives the rendered bands
+	 * @param listener notified after each written frame
+	 */
+	private void renderFrames(BandWriter writer, ProgressListener listener) throws IOException {
+		int width = compositor.getWidth();
+		int height = compositor.getHeight();
+		int frameCount = sweep.getFrameCount();
+		int bandHeight = Bands.getBandHeight(width, height);
+		int bandsPerFrame = (height + bandHeight - 1) / bandHeight;
+		long bandCount = (long) frameCount * bandsPerFrame;
+		int bandPixels = width * bandHeight;
+		int maxPending = (int) Math.min(bandCount, Math.max(2L * threads, MAX_PENDING_PIXELS / bandPixels));
+		
+		AtomicInteger threadNumber = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "moiree-sweep-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// rendered or rendering bands in order, each future returns its band buffer
+		Deque<Future<int[]>> pending = new ArrayDeque<>(maxPending);
+		// band buffers that were written and can be rendered to again
+		Deque<int[]> unusedBands = new ArrayDeque<>(maxPending);
+		try {
+			long submitted = 0;
+			MoireeCompositor frameCompositor = null;
+			for(long band = 0; band < bandCount; band++) {
+				while(submitted < bandCount && pending.size() < maxPending) {
+					int submittedY = (int) (submitted % bandsPerFrame) * bandHeight;
+					if(submittedY == 0)
+						frameCompositor = compositor.withTransform(sweep.getTransform((int) (submitted / bandsPerFrame)));
+					int rows = Math.min(bandHeight, height - submittedY);
+					int[] argbs = unusedBands.isEmpty() ? new int[bandPixels] : unusedBands.pop();
+					MoireeCompositor bandCompositor = frameCompositor;
+					pending.add(workers.submit(() -> {
+						bandCompositor.renderRows(submittedY, rows, argbs, 0);
+						return argbs;
+					}));
+					submitted++;
+				}
+				int frame = (int) (band / bandsPerFrame);
+				int y = (int) (band % bandsPerFrame) * bandHeight;
+				int rows = Math.min(bandHeight, height - y);
+				int[] argbs = await(pending.remove());
+				writer.writeBand(frame, y, rows, argbs);
+				unusedBands.push(argbs);
+				if(y + rows == height)
+					listener.frameWritten(frame + 1, frameCount);
+			}
+		} finally {
+			for(Future<int[]> future : pending)
+				future.cancel(true);
+			workers.shutdownNow();
+		}
+	}
+	
+	private static int[] await(Future<int[]> band) {
+		try {
+			return band.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for a band");
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+	
+	
+	/**
+	 * Receives the progress of a sweep export.
+	 */
+	@FunctionalInterface
+	public static interface ProgressListener {
+		/**
+		 * Called on the exporting thread after a frame was written.
+		 * Throwing a {@link CancellationException} stops the export.
+		 * 
+		 * @param framesWritten the number of frames written so far
+		 * @param frameCount the number of frames of the sweep
+		 */
+		void frameWritten(int framesWritten, int frameCount);
+	}
+	
+	/**
+	 * Writes the rendered bands of the frames, frame after frame and band after band.
+	 */
+	private static interface BandWriter {
+		/**
+		 * Write a band of a frame. The buffer is reused after returning.
+		 * 
+		 * @param frame the frame index
+		 * @param y the first row of the band
+		 * @param rows the number of rows
+		 * @param argbs the band pixels, row after row, with a scanline stride of the frame width
+		 * @throws IOException if writing fails
+		 */
+		void writeBand(int frame, int y, int rows, int[] argbs) throws IOException;
+	}
+}
@@ -0,0 +1,144 @@
+package de.lennartmeinhardt.moiree;
+
+import java.net.URL;
+import java.util.ResourceBundle;
+import java.util.function.Predicate;
+
+import de.lennartmeinhardt.moiree.ParserTextField.Parser;
+import de.lennartmeinhardt.moiree.SweepExporter.Format;
+import javafx.beans.binding.BooleanBinding;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.layout.GridPane;
+import javafx.util.StringConverter;
+
+/**
+ * Core class for managing the setup of a transformation sweep.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class SweepSetupController implements Initializable {
+	
+	@FXML private GridPane sweepSetupGrid;
+	@FXML private ParserTextField<Double> rotateStartInput;
+	@FXML private ParserTextField<Double> rotateEndInput;
+	@FXML private ParserTextField<Double> translateXStartInput;
+	@FXML private ParserTextField<Double> translateXEndInput;
+	@FXML private ParserTextField<Double> translateYStartInput;
+	@FXML private ParserTextField<Double> translateYEndInput;
+	@FXML private ParserTextField<Double> scaleXStartInput;
+	@FXML private ParserTextField<Double> scaleXEndInput;
+	@FXML private ParserTextField<Double> scaleYStartInput;
+	@FXML private ParserTextField<Double> scaleYEndInput;
+	@FXML private ParserTextField<Integer> frameCountInput;
+	@FXML private ComboBox<Format> formatCombobox;
+	@FXML private Label frameDelayLabel;
+	@FXML private ParserTextField<Integer> frameDelayInput;
+	
+	// determines if all input is valid
+	private BooleanBinding allInputValidBinding;
+	
+	
+	@Override public void initialize(URL location, ResourceBundle resources) {
+		formatCombobox.getItems().addAll(Format.PNG_SEQUENCE, Format.APNG);
+		formatCombobox.setConverter(new StringConverter<Format>() {
+			@Override public String toString(Format object) {
+				return resources.getString(object == Format.APNG ? "sweepFormatApng" : "sweepFormatPngSequence");
+			}
+			
+			@Override public Format fromString(String string) {
+				throw new RuntimeException();
+			}
+		});
+		formatCombobox.getSelectionModel().select(Format.APNG);
+		
+		rotateStartInput.setParser(Parser.DOUBLE_PARSER);
+		rotateEndInput.setParser(Parser.DOUBLE_PARSER);
+		translateXStartInput.setParser(Parser.DOUBLE_PARSER);
+		translateXEndInput.setParser(Parser.DOUBLE_PARSER);
+		translateYStartInput.setParser(Parser.DOUBLE_PARSER);
+		translateYEndInput.setParser(Parser.DOUBLE_PARSER);
+		
+		// zero scalings can not be inverted for rendering
+		Predicate<Double> scaleChecker = d -> d > 0;
+		Parser<Double> scaleParser = Parser.DOUBLE_PARSER.withVeto(scaleChecker);
+		scaleXStartInput.setParser(scaleParser);
+		scaleXEndInput.setParser(scaleParser);
+		scaleYStartInput.setParser(scaleParser);
+		scaleYEndInput.setParser(scaleParser);
+		
+		Predicate<Integer> frameCountChecker = i -> i >= 2 && i <= 100000;
+		frameCountInput.setParser(Parser.INT_PARSER.withVeto(frameCountChecker));
+		Predicate<Integer> frameDelayChecker = i -> i > 0 && i <= 0xffff;
+		frameDelayInput.setParser(Parser.INT_PARSER.withVeto(frameDelayChecker));
+		
+		// the frame delay is only stored in animated PNGs
+		BooleanBinding formatIsNotApng = formatCombobox.valueProperty().isNotEqualTo(Format.APNG);
+		frameDelayLabel.disableProperty().bind(formatIsNotApng);
+		frameDelayInput.disableProperty().bind(formatIsNotApng);
+		
+		allInputValidBinding = formatCombobox.getSelectionModel().selectedItemProperty().isNotNull()
+				.and(rotateStartInput.parseSuccessfulProperty())
+				.and(rotateEndInput.parseSuccessfulProperty())
+				.and(translateXStartInput.parseSuccessfulProperty())
+				.and(translateXEndInput.parseSuccessfulProperty())
+				.and(translateYStartInput.parseSuccessfulProperty())
+				.and(translateYEndInput.parseSuccessfulProperty())
+				.and(scaleXStartInput.parseSuccessfulProperty())
+				.and(scaleXEndInput.parseSuccessfulProperty())
+				.and(scaleYStartInput.parseSuccessfulProperty())
+				.and(scaleYEndInput.parseSuccessfulProperty())
+				.and(frameCountInput.parseSuccessfulProperty())
+				.and(frameDelayInput.parseSuccessfulProperty());
+	}
+	
+	
+	/**
+	 * Load start and end of the sweep from given transformation.
+	 * 
+	 * @param transform the transformation to start and end with
+	 */
+	public void loadFromTransform(MoireeTransform transform) {
+		rotateStartInput.setText("" + transform.getRotate());
+		rotateEndInput.setText("" + transform.getRotate());
+		translateXStartInput.setText("" + transform.getTranslateX());
+		translateXEndInput.setText("" + transform.getTranslateX());
+		translateYStartInput.setText("" + transform.getTranslateY());
+		translateYEndInput.setText("" + transform.getTranslateY());
+		scaleXStartInput.setText("" + transform.getScaleX());
+		scaleXEndInput.setText("" + transform.getScaleX());
+		scaleYStartInput.setText("" + transform.getScaleY());
+		scaleYEndInput.setText("" + transform.getScaleY());
+	}
+	
+	/**
+	 * Create the sweep from the UI data.
+	 * 
+	 * @return the sweep
+	 */
+	public TransformSweep getSweep() {
+		MoireeTransform start = new MoireeTransform(rotateStartInput.getParsedValue(),
+				translateXStartInput.getParsedValue(), translateYStartInput.getParsedValue(),
+				scaleXStartInput.getParsedValue(), scaleYStartInput.getParsedValue());
+		MoireeTransform end = new MoireeTransform(rotateEndInput.getParsedValue(),
+				translateXEndInput.getParsedValue(), translateYEndInput.getParsedValue(),
+				scaleXEndInput.getParsedValue(), scaleYEndInput.getParsedValue());
+		return new TransformSweep(start, end, frameCountInput.getParsedValue());
+	}
+	
+	public Format getFormat() {
+		return formatCombobox.getValue();
+	}
+	public int getFrameDelayMillis() {
+		return frameDelayInput.getParsedValue();
+	}
+	
+	public BooleanBinding allInputValidBinding() {
+		return allInputValidBinding;
+	}
+	public boolean isAllInputValid() {
+		return allInputValidBinding.get();
+	}
+}
@@ -0,0 +1,153 @@
+package de.lennartmeinhardt.moiree;
+
+import java.nio.IntBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Cache of the expanded tiles of a pattern, keyed by their tile index. Each tile is an image that shares an off-heap
+ * {@link PixelBuffer}, see {@link Drawing#createPixelBuffer(int, int)}.
+ * <p>
+ * Tiles are held up to a byte budget, the least recently used ones are evicted first. When the pattern changes,
+ * the tiles can be kept as stale tiles. They can still be shown until they are expanded again, in place.
+ * The cache is used on the FX thread only.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class TileCache {
+	
+	private final long byteBudget;
+	// the tiles in access order, least recently used first
+	private final LinkedHashMap<Integer, Tile> tiles = new LinkedHashMap<>(16, .75f, true);
+	// byte size of all tiles
+	private long byteSize;
+	
+	
+	/**
+	 * Create a new {@link TileCache}.
+	 * 
+	 * @param byteBudget the maximum byte size of all tiles
+	 */
+	public TileCache(long byteBudget) {
+		if(byteBudget < 0)
+			throw new IllegalArgumentException("Invalid byte budget " + byteBudget);
+		this.byteBudget = byteBudget;
+	}
+	
+	
+	public long getByteBudget() {
+		return byteBudget;
+	}
+	public long getByteSize() {
+		return byteSize;
+	}
+	
+	/**
+	 * Get a tile, current or stale, and make it the most recently used one.
+	 * 
+	 * @param index the tile index
+	 * @return the tile, or null if it is not cached
+	 */
+	public Tile get(int index) {
+		return tiles.get(index);
+	}
+	
+	/**
+	 * Get a tile to expand a tile of the current pattern into. A cached tile of the same size is returned as it is,
+	 * so it is overwritten in place. Otherwise a new tile is added as the most recently used one, evicting the least
+	 * recently used tiles until the budget is kept.
+	 * 
+	 * @param index the tile index
+	 * @param width the tile width
+	 * @param height the tile height
+	 * @return the tile
+	 */
+	public Tile allocate(int index, int width, int height) {
+		Tile tile = tiles.get(index);
+		if(tile != null && tile.getWidth() == width && tile.getHeight() == height)
+			return tile;
+		if(tile != null)
+			remove(index);
+		
+		tile = new Tile(width, height);
+		tiles.put(index, tile);
+		byteSize += tile.getByteSize();
+		Iterator<Map.Entry<Integer, Tile>> leastRecentlyUsed = tiles.entrySet().iterator();
+		while(byteSize > byteBudget && tiles.size() > 1) {
+			Map.Entry<Integer, Tile> evicted = leastRecentlyUsed.next();
+			leastRecentlyUsed.remove();
+			byteSize -= evicted.getValue().getByteSize();
+		}
+		return tile;
+	}
+	
+	/**
+	 * Mark all tiles as stale, because the pattern changed.
+	 */
+	public void invalidate() {
+		for(Tile tile : tiles.values())
+			tile.current = false;
+	}
+	
+	/**
+	 * Remove all tiles.
+	 */
+	public void clear() {
+		tiles.clear();
+		byteSize = 0;
+	}
+	
+	private void remove(int index) {
+		Tile removed = tiles.remove(index);
+		if(removed != null)
+			byteSize -= removed.getByteSize();
+	}
+	
+	
+	/**
+	 * An expanded tile, together with the pixel buffer its image shares.
+	 */
+	public static final class Tile {
+		
+		private final PixelBuffer<IntBuffer> pixels;
+		private final WritableImage image;
+		// holds the current pattern, not a previous one
+		private boolean current;
+		
+		
+		private Tile(int width, int height) {
+			this.pixels = Drawing.createPixelBuffer(width, height);
+			this.image = new WritableImage(pixels);
+		}
+		
+		
+		public PixelBuffer<IntBuffer> getPixels() {
+			return pixels;
+		}
+		public WritableImage getImage() {
+			return image;
+		}
+		public int getWidth() {
+			return pixels.getWidth();
+		}
+		public int getHeight() {
+			return pixels.getHeight();
+		}
+		public long getByteSize() {
+			return 4L * getWidth() * getHeight();
+		}
+		public boolean isCurrent() {
+			return current;
+		}
+		/**
+		 * Mark the tile as holding the current pattern, after it was expanded.
+		 */
+		public void setCurrent() {
+			current = true;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package de.lennartmeinhardt.moiree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Pane;
+
+/**
+ * Shows a pattern as a grid of tile images, of which only some are shown at a time. The view always has the size
+ * of the whole pattern, so it is laid out and transformed like a single image of the pattern.
+ * <p>
+ * Behind the tiles, the reduced resolution preview of the pattern is stretched to the pattern size, so parts
+ * without a shown tile still show the pattern. The views of hidden tiles are reused for the next shown ones.
+ * Which tiles are shown is decided by a {@link ProgressiveRefiner}.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class TiledPatternView extends Pane {
+	
+	private final ImageView previewView = new ImageView();
+	// the views of the shown tiles, by tile index
+	private final Map<Integer, ImageView> tileViews = new HashMap<>();
+	// views of hidden tiles, not in the scene graph
+	private final List<ImageView> unusedViews = new ArrayList<>();
+	
+	
+	public TiledPatternView() {
+		getChildren().add(previewView);
+		setMinSize(USE_PREF_SIZE, USE_PREF_SIZE);
+		setMaxSize(USE_PREF_SIZE, USE_PREF_SIZE);
+	}
+	
+	
+	/**
+	 * Show a new pattern. Shown tiles stay until they are hidden or replaced.
+	 * 
+	 * @param width the pattern width
+	 * @param height the pattern height
+	 * @param preview the preview of the pattern, or null if it has none
+	 */
+	public void setPattern(int width, int height, Image preview) {
+		setPrefSize(width, height);
+		previewView.setImage(preview);
+		previewView.setFitWidth(width);
+		previewView.setFitHeight(height);
+	}
+	
+	/**
+	 * Show or hide the preview behind the tiles.
+	 * 
+	 * @param value true to show the preview
+	 */
+	public void setPreviewVisible(boolean value) {
+		previewView.setVisible(value);
+	}
+	
+	/**
+	 * Get the part of the view that a node shows on screen.
+	 * 
+	 * @param viewport the node whose bounds are visible, for example the root of the scene
+	 * @return the bounding box of the viewport in the view's coordinates, clipped to the pattern,
+	 * or null if no part of the pattern is visible
+	 */
+	public Bounds getVisibleBounds(Node viewport) {
+		// the viewport's rectangle is transformed back through this view's transformations
+		Bounds bounds = sceneToLocal(viewport.localToScene(viewport.getLayoutBounds()));
+		if(bounds == null || ! bounds.intersects(0, 0, getPrefWidth(), getPrefHeight()))
+			return null;
+		return bounds;
+	}
+	
+	/**
+	 * Show a tile image, or replace the image of a shown tile.
+	 * 
+	 * @param tile the tile index
+	 * @param x the x coordinate of the tile's upper left corner
+	 * @param y the y coordinate of the tile's upper left corner
+	 * @param image the tile image
+	 */
+	public void showTile(int tile, int x, int y, Image image) {
+		ImageView view = tileViews.get(tile);
+		if(view == null) {
+			view = unusedViews.isEmpty() ? new ImageView() : unusedViews.remove(unusedViews.size() - 1);
+			view.relocate(x, y);
+			tileViews.put(tile, view);
+			getChildren().add(view);
+		}
+		if(view.getImage() != image)
+			view.setImage(image);
+	}
+	
+	/**
+	 * Hide all shown tiles except some.
+	 * 
+	 * @param keep tells which tiles stay shown
+	 */
+	public void retainTiles(IntPredicate keep) {
+		Iterator<Map.Entry<Integer, ImageView>> shown = tileViews.entrySet().iterator();
+		while(shown.hasNext()) {
+			Map.Entry<Integer, ImageView> entry = shown.next();
+			if(! keep.test(entry.getKey())) {
+				shown.remove();
+				ImageView view = entry.getValue();
+				getChildren().remove(view);
+				view.setImage(null);
+				unusedViews.add(view);
+			}
+		}
+	}
+}
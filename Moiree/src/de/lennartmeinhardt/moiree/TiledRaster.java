@@ -0,0 +1,137 @@
+package de.lennartmeinhardt.moiree;
+
+import java.nio.IntBuffer;
+
+/**
+ * A {@link PatternRaster} that repeats a single period tile in both directions.
+ * Only the tile is stored, so memory does not depend on the raster size.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class TiledRaster implements PatternRaster {
+	
+	// the period tile
+	private final PatternRaster tile;
+	private final int width;
+	private final int height;
+	
+	
+	/**
+	 * Create a new {@link TiledRaster} that repeats the given tile up to the given size.
+	 * 
+	 * @param tile the period tile
+	 * @param width the raster width
+	 * @param height the raster height
+	 */
+	public TiledRaster(PatternRaster tile, int width, int height) {
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid raster size " + width + "x" + height);
+		this.tile = tile;
+		this.width = width;
+		this.height = height;
+	}
+	
+	
+	public PatternRaster getTile() {
+		return tile;
+	}
+	
+	@Override public int getWidth() {
+		return width;
+	}
+	@Override public int getHeight() {
+		return height;
+	}
+	
+	@Override public boolean isSet(int x, int y) {
+		return tile.isSet(x % tile.getWidth(), y % tile.getHeight());
+	}
+	
+	/**
+	 * Read a single period of the row from the tile, then repeat the already read periods word by word,
+	 * doubling the copied length each time.
+	 */
+	@Override public void readRow(int y, long[] row) {
+		tile.readRow(y % tile.getHeight(), row);
+		int read = Math.min(tile.getWidth(), width);
+		while(read < width) {
+			int count = Math.min(read, width - read);
+			copyBits(row, 0, read, count);
+			read += count;
+		}
+	}
+	
+	@Override public void expandRow(int y, int x, int length, int[] argbs, int offset, int setArgb, int unsetArgb) {
+		int tileY = y % tile.getHeight();
+		int tileWidth = tile.getWidth();
+		int tileX = x % tileWidth;
+		
+		// expand a single period, starting at the tile column of x
+		int period = Math.min(length, tileWidth);
+		int head = Math.min(period, tileWidth - tileX);
+		tile.expandRow(tileY, tileX, head, argbs, offset, setArgb, unsetArgb);
+		if(head < period)
+			tile.expandRow(tileY, 0, period - head, argbs, offset + head, setArgb, unsetArgb);
+		
+		// repeat the already expanded periods, doubling the copied length each time
+		int expanded = period;
+		while(expanded < length) {
+			int count = Math.min(expanded, length - expanded);
+			System.arraycopy(argbs, offset, argbs, offset + expanded, count);
+			expanded += count;
+		}
+	}
+	
+	@Override public void expandRow(int y, int x, int length, IntBuffer argbs, int offset, int setArgb, int unsetArgb) {
+		int tileY = y % tile.getHeight();
+		int tileWidth = tile.getWidth();
+		int tileX = x % tileWidth;
+		
+		int period = Math.min(length, tileWidth);
+		int head = Math.min(period, tileWidth - tileX);
+		tile.expandRow(tileY, tileX, head, argbs, offset, setArgb, unsetArgb);
+		if(head < period)
+			tile.expandRow(tileY, 0, period - head, argbs, offset + head, setArgb, unsetArgb);
+		
+		// bulk copies between views of the buffer, which leave the buffer's own position and limit alone
+		IntBuffer source = argbs.duplicate();
+		IntBuffer target = argbs.duplicate();
+		int expanded = period;
+		while(expanded < length) {
+			int count = Math.min(expanded, length - expanded);
+			source.limit(offset + count).position(offset);
+			target.limit(offset + expanded + count).position(offset + expanded);
+			target.put(source);
+			expanded += count;
+		}
+	}
+	
+	@Override public long getByteSize() {
+		return tile.getByteSize();
+	}
+	
+	/**
+	 * Copy bits within a row to a higher position. The other bits of the target words are kept.
+	 * 
+	 * @param row the row words
+	 * @param from the first source bit
+	 * @param to the first target bit, at least the source bit plus the count
+	 * @param count the number of bits to copy
+	 */
+	private static void copyBits(long[] row, int from, int to, int count) {
+		while(count > 0) {
+			int shift = to & 63;
+			int bits = Math.min(count, 64 - shift);
+			// the next 64 source bits, starting at the source position
+			int sourceShift = from & 63;
+			long source = row[from >>> 6] >>> sourceShift;
+			if(sourceShift != 0 && (from >>> 6) + 1 < row.length)
+				source |= row[(from >>> 6) + 1] << (64 - sourceShift);
+			long mask = (bits == 64 ? -1L : (1L << bits) - 1) << shift;
+			row[to >>> 6] = row[to >>> 6] & ~mask | source << shift & mask;
+			from += bits;
+			to += bits;
+			count -= bits;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package de.lennartmeinhardt.moiree;
+
+/**
+ * A sequence of transformations of the upper Moir image, interpolated linearly from a start to an end transformation.
+ * 
+ * @author Lennart Meinhardt
+ */
+public final class TransformSweep {
+	
+	private final MoireeTransform start;
+	private final MoireeTransform end;
+	private final int frameCount;
+	
+	
+	/**
+	 * Create a new {@link TransformSweep}.
+	 * 
+	 * @param start the transformation of the first frame
+	 * @param end the transformation of the last frame
+	 * @param frameCount the number of frames, at least 2
+	 */
+	public TransformSweep(MoireeTransform start, MoireeTransform end, int frameCount) {
+		if(frameCount < 2)
+			throw new IllegalArgumentException("A sweep needs at least 2 frames, not " + frameCount);
+		this.start = start;
+		this.end = end;
+		this.frameCount = frameCount;
+	}
+	
+	
+	public MoireeTransform getStart() {
+		return start;
+	}
+	public MoireeTransform getEnd() {
+		return end;
+	}
+	public int getFrameCount() {
+		return frameCount;
+	}
+	
+	/**
+	 * Get the transformation of a frame.
+	 * 
+	 * @param frame the frame index, from 0 to the frame count - 1
+	 * @return the transformation
+	 */
+	public MoireeTransform getTransform(int frame) {
+		if(frame < 0 || frame >= frameCount)
+			throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+		if(frame == frameCount - 1)
+			return end;
+		return start.interpolate(end, frame / (frameCount - 1.));
+	}
+	
+	@Override public String toString() {
+		return "TransformSweep[start=" + start + ", end=" + end + ", frameCount=" + frameCount + "]";
+	}
+}
@@ -145,6 +145,15 @@ public class TransformationSetupController implements Initializable {
 	public double getScaleY() { return scaleYProperty().get(); }
 	public void setScaleY(double value) { scaleYProperty().set(value); }
 	
+	/**
+	 * Get the current transformation as an immutable value.
+	 * 
+	 * @return the current transformation
+	 */
+	public MoireeTransform getTransform() {
+		return new MoireeTransform(getRotate(), getTranslateX(), getTranslateY(), getAutoScaleX().doubleValue(), getAutoScaleY().doubleValue());
+	}
+	
 	public NumberBinding autoScaleXBinding() { return autoScaleXBinding; }
 	public Number getAutoScaleX() { return autoScaleXBinding.getValue(); }
 	
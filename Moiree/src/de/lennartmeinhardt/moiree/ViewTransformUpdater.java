@@ -0,0 +1,182 @@
+package de.lennartmeinhardt.moiree;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.transform.Affine;
+
+/**
+ * Applies the transformation of the upper Moir image to its view through a single {@link Affine}, at most once per pulse.
+ * <p>
+ * Changes of the transformation setup, and relative changes from mouse input, only mark the transformation as dirty.
+ * They are coalesced until the next pulse, where pending mouse deltas are added to the setup with one set per value,
+ * and the resulting transformation is applied to the view with one update of the affine.
+ * The timer only runs while an update is pending.
+ * <p>
+ * The applied transformation is published as a single value per pulse, see {@link #transformProperty()}. Listeners of it
+ * see every change once and complete, unlike listeners of the single setup values, which are set one after the other.
+ * 
+ * @author Lennart Meinhardt
+ */
+public class ViewTransformUpdater extends AnimationTimer {
+	
+	private final TransformationSetupController setup;
+	private final Node view;
+	private final Affine affine = new Affine();
+	// marks the setup or view as changed since the last pulse
+	private final InvalidationListener invalidationListener = observable -> invalidate();
+	// the transformation of the last pulse
+	private final ReadOnlyObjectWrapper<MoireeTransform> transform;
+	
+	// pending mouse input, applied on the next pulse
+	private double pendingTranslateX, pendingTranslateY;
+	private double pendingRotate;
+	private double pendingCommonScale;
+	private double pendingScaleX, pendingScaleY;
+	// the kind of scaling changed last, null if unchanged
+	private Boolean pendingUseCommonScale;
+	
+	private boolean dirty;
+	// the transformation the affine was last set to, and the view bounds it was set for
+	private MoireeTransform appliedTransform;
+	private Bounds appliedBounds;
+	
+	
+	/**
+	 * Create a new {@link ViewTransformUpdater} and add its affine to the view.
+	 * 
+	 * @param setup the transformation setup to follow
+	 * @param view the view to transform
+	 */
+	public ViewTransformUpdater(TransformationSetupController setup, Node view) {
+		this.setup = setup;
+		this.view = view;
+		this.transform = new ReadOnlyObjectWrapper<>(this, "transform", setup.getTransform());
+		view.getTransforms().add(affine);
+		
+		observe(setup.rotateProperty(), setup.translateXProperty(), setup.translateYProperty(),
+				setup.autoScaleXBinding(), setup.autoScaleYBinding(), view.layoutBoundsProperty());
+		invalidate();
+	}
+	
+	
+	/**
+	 * The transformation of the upper layer, set at most once per pulse after the pending input was applied.
+	 * 
+	 * @return the property of the current transformation
+	 */
+	public ReadOnlyObjectProperty<MoireeTransform> transformProperty() {
+		return transform.getReadOnlyProperty();
+	}
+	public MoireeTransform getTransform() {
+		return transform.get();
+	}
+	
+	private void observe(Observable... observables) {
+		for(Observable observable : observables)
+			observable.addListener(invalidationListener);
+	}
+	
+	/**
+	 * Request an update on the next pulse.
+	 */
+	public void invalidate() {
+		if(! dirty) {
+			dirty = true;
+			start();
+		}
+	}
+	
+	/**
+	 * Translate by given amounts on the next pulse.
+	 * 
+	 * @param dx the x translation to add
+	 * @param dy the y translation to add
+	 */
+	public void translateBy(double dx, double dy) {
+		pendingTranslateX += dx;
+		pendingTranslateY += dy;
+		invalidate();
+	}
+	
+	/**
+	 * Rotate by given angle on the next pulse.
+	 * 
+	 * @param degrees the rotation to add
+	 */
+	public void rotateBy(double degrees) {
+		pendingRotate += degrees;
+		invalidate();
+	}
+	
+	/**
+	 * Change the common scaling by given amount on the next pulse and switch to common scaling.
+	 * 
+	 * @param ds the scaling to add
+	 */
+	public void commonScaleBy(double ds) {
+		pendingCommonScale += ds;
+		pendingUseCommonScale = Boolean.TRUE;
+		invalidate();
+	}
+	
+	/**
+	 * Change the individual scalings by given amounts on the next pulse and switch to individual scaling.
+	 * 
+	 * @param dsx the x scaling to add
+	 * @param dsy the y scaling to add
+	 */
+	public void scaleBy(double dsx, double dsy) {
+		pendingScaleX += dsx;
+		pendingScaleY += dsy;
+		pendingUseCommonScale = Boolean.FALSE;
+		invalidate();
+	}
+	
+	@Override public void handle(long now) {
+		applyPendingInput();
+		// changes caused by the pending input are applied below
+		dirty = false;
+		stop();
+		
+		MoireeTransform current = setup.getTransform();
+		if(! current.equals(transform.get()))
+			transform.set(current);
+		
+		// the pivot is the center of the view, which has the pattern size
+		Bounds bounds = view.getLayoutBounds();
+		if(bounds.getWidth() == 0 || (current.equals(appliedTransform) && bounds.equals(appliedBounds)))
+			return;
+		
+		double[] m = current.getMatrix(bounds.getWidth() / 2, bounds.getHeight() / 2);
+		affine.setToTransform(m[0], m[1], m[2], m[3], m[4], m[5]);
+		appliedTransform = current;
+		appliedBounds = bounds;
+	}
+	
+	private void applyPendingInput() {
+		if(pendingTranslateX != 0)
+			setup.setTranslateX(setup.getTranslateX() + pendingTranslateX);
+		if(pendingTranslateY != 0)
+			setup.setTranslateY(setup.getTranslateY() + pendingTranslateY);
+		if(pendingRotate != 0)
+			setup.setRotate(setup.getRotate() + pendingRotate);
+		if(pendingCommonScale != 0)
+			setup.setCommonScale(setup.getCommonScale() + pendingCommonScale);
+		if(pendingScaleX != 0)
+			setup.setScaleX(setup.getScaleX() + pendingScaleX);
+		if(pendingScaleY != 0)
+			setup.setScaleY(setup.getScaleY() + pendingScaleY);
+		if(pendingUseCommonScale != null)
+			setup.setUseCommonScale(pendingUseCommonScale);
+		
+		pendingTranslateX = pendingTranslateY = 0;
+		pendingRotate = 0;
+		pendingCommonScale = pendingScaleX = pendingScaleY = 0;
+		pendingUseCommonScale = null;
+	}
+}
@@ -0,0 +1,18 @@
+package de.lennartmeinhardt.moiree;
+
+/**
+ * A {@link PatternRaster} that patterns can be drawn to, row by row.
+ * Different rows can be written from different threads.
+ * 
+ * @author Lennart Meinhardt
+ */
+public interface WritablePatternRaster extends PatternRaster {
+	
+	/**
+	 * Replace a row's bits by the given ones. Pixel x of the row is bit x % 64 of word x / 64.
+	 * 
+	 * @param y the row index
+	 * @param row array of at least {@link BitRaster#getWordsPerRow(int)} words for the raster width
+	 */
+	void writeRow(int y, long[] row);
+}
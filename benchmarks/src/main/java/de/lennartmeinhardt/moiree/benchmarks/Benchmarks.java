@@ -0,0 +1,42 @@
+package de.lennartmeinhardt.moiree.benchmarks;
+
+import de.lennartmeinhardt.moiree.ImageSettings;
+import de.lennartmeinhardt.moiree.MoireeImageMode;
+import de.lennartmeinhardt.moiree.MoireeTransform;
+
+/**
+ * Shared setup of the benchmarks.
+ * 
+ * @author Lennart Meinhardt
+ */
+final class Benchmarks {
+	
+	// a typical Moiré transformation: slightly rotated, scaled and shifted
+	static final MoireeTransform TRANSFORM = new MoireeTransform(5, 3, -2, 1.02, 1.02);
+	static final int FOREGROUND_ARGB = 0xff000000;
+	static final int BACKGROUND_ARGB = 0xffffffff;
+	
+	
+	private Benchmarks() {}
+	
+	
+	/**
+	 * Create square image settings with a fixed seed.
+	 * 
+	 * @param mode the image mode
+	 * @param size the image width and height
+	 * @param pixelSize the pattern pixel size
+	 * @param density the density of random pixels in percent
+	 * @return the settings
+	 */
+	static ImageSettings createSettings(MoireeImageMode mode, int size, int pixelSize, double density) {
+		ImageSettings settings = new ImageSettings();
+		settings.setImageMode(mode);
+		settings.setImageWidth(size);
+		settings.setImageHeight(size);
+		settings.setPixelSize(pixelSize);
+		settings.setPixelDensity(density);
+		settings.setRandomSeed(42);
+		return settings;
+	}
+}
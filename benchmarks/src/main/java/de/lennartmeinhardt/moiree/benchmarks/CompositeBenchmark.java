@@ -0,0 +1,64 @@
+package de.lennartmeinhardt.moiree.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lennartmeinhardt.moiree.ImageSettings;
+import de.lennartmeinhardt.moiree.MoireeCompositor;
+import de.lennartmeinhardt.moiree.MoireeCompositor.Sampling;
+import de.lennartmeinhardt.moiree.MoireeImageMode;
+
+/**
+ * Measures compositing of both Moiré layers in software, from a generated raster and from the analytic sampler.
+ * Rendered bands are consumed without being stored, so large images do not need a full frame in memory.
+ * 
+ * @author Lennart Meinhardt
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CompositeBenchmark {
+	
+	@Param({"RANDOM", "SQUARES", "TRIANGLES", "HORIZONTAL_LINES"})
+	public MoireeImageMode mode;
+	@Param({"100", "1000", "10000"})
+	public int size;
+	@Param({"NEAREST", "BILINEAR"})
+	public Sampling sampling;
+	
+	private MoireeCompositor rasterCompositor;
+	private MoireeCompositor samplerCompositor;
+	
+	
+	@Setup public void setup() {
+		ImageSettings settings = Benchmarks.createSettings(mode, size, 1, 20);
+		rasterCompositor = new MoireeCompositor(mode.createRaster(settings), Benchmarks.TRANSFORM, sampling,
+				Benchmarks.FOREGROUND_ARGB, Benchmarks.BACKGROUND_ARGB);
+		samplerCompositor = new MoireeCompositor(mode.createSampler(settings), size, size, Benchmarks.TRANSFORM, sampling,
+				Benchmarks.FOREGROUND_ARGB, Benchmarks.BACKGROUND_ARGB, 1);
+	}
+	
+	@Benchmark public void compositeRaster(Blackhole blackhole) throws IOException {
+		rasterCompositor.render((y, rows, argbs) -> blackhole.consume(argbs));
+	}
+	
+	@Benchmark public void compositeSampler(Blackhole blackhole) throws IOException {
+		samplerCompositor.render((y, rows, argbs) -> blackhole.consume(argbs));
+	}
+}
@@ -0,0 +1,74 @@
+package de.lennartmeinhardt.moiree.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lennartmeinhardt.moiree.ImageSettings;
+import de.lennartmeinhardt.moiree.MoireeCompositor;
+import de.lennartmeinhardt.moiree.MoireeCompositor.Sampling;
+import de.lennartmeinhardt.moiree.MoireeImageMode;
+import de.lennartmeinhardt.moiree.PngOptions;
+import de.lennartmeinhardt.moiree.PngOptions.Filter;
+import de.lennartmeinhardt.moiree.SavingHelper;
+
+/**
+ * Measures the save path: compositing, PNG encoding and writing to a file. Nearest sampling is written
+ * as an indexed image, bilinear sampling as RGBA.
+ * 
+ * @author Lennart Meinhardt
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ExportBenchmark {
+	
+	@Param({"RANDOM", "SQUARES"})
+	public MoireeImageMode mode;
+	@Param({"100", "1000", "10000"})
+	public int size;
+	@Param({"NEAREST", "BILINEAR"})
+	public Sampling sampling;
+	@Param({"AUTOMATIC", "NONE", "PAETH"})
+	public Filter filter;
+	
+	private MoireeCompositor compositor;
+	private PngOptions options;
+	private Path file;
+	
+	
+	@Setup public void setup() throws IOException {
+		ImageSettings settings = Benchmarks.createSettings(mode, size, 1, 20);
+		compositor = new MoireeCompositor(mode.createRaster(settings), Benchmarks.TRANSFORM, sampling,
+				Benchmarks.FOREGROUND_ARGB, Benchmarks.BACKGROUND_ARGB);
+		options = new PngOptions(Deflater.DEFAULT_COMPRESSION, filter);
+		file = Files.createTempFile("moiree-benchmark", ".png");
+	}
+	
+	@TearDown public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+	
+	@Benchmark public long writePng() throws IOException {
+		SavingHelper.writePng(compositor, file, options);
+		return Files.size(file);
+	}
+}
@@ -0,0 +1,76 @@
+package de.lennartmeinhardt.moiree.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lennartmeinhardt.moiree.ImageSettings;
+import de.lennartmeinhardt.moiree.MoireeImageMode;
+import de.lennartmeinhardt.moiree.PatternRaster;
+
+/**
+ * Measures pattern generation of every image mode, and the expansion of patterns to ARGB rows for display,
+ * into an array and into the off-heap buffer of a displayed image.
+ * The density of the random mode is measured by {@link RandomDensityBenchmark}.
+ * 
+ * @author Lennart Meinhardt
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class GeneratorBenchmark {
+	
+	@Param({"RANDOM", "SQUARES", "TRIANGLES", "HORIZONTAL_LINES", "DIAGONAL_LINES"})
+	public MoireeImageMode mode;
+	@Param({"100", "1000", "10000"})
+	public int size;
+	@Param({"1", "4", "16"})
+	public int pixelSize;
+	
+	private ImageSettings settings;
+	private PatternRaster raster;
+	private int[] row;
+	private IntBuffer image;
+	
+	
+	@Setup public void setup() {
+		settings = Benchmarks.createSettings(mode, size, pixelSize, 20);
+		raster = mode.createRaster(settings);
+		row = new int[size];
+		image = ByteBuffer.allocateDirect(size * size * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+	
+	@Benchmark public PatternRaster createRaster() {
+		return mode.createRaster(settings);
+	}
+	
+	@Benchmark public void expandRows(Blackhole blackhole) {
+		for(int y = 0; y < size; y++) {
+			raster.expandRow(y, 0, size, row, 0, Benchmarks.FOREGROUND_ARGB, Benchmarks.BACKGROUND_ARGB);
+			blackhole.consume(row);
+		}
+	}
+	
+	@Benchmark public IntBuffer expandRowsToBuffer() {
+		for(int y = 0; y < size; y++)
+			raster.expandRow(y, 0, size, image, y * size, Benchmarks.FOREGROUND_ARGB, Benchmarks.BACKGROUND_ARGB);
+		return image;
+	}
+}
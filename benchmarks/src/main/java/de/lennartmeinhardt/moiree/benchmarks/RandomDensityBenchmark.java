@@ -0,0 +1,51 @@
+package de.lennartmeinhardt.moiree.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lennartmeinhardt.moiree.ImageSettings;
+import de.lennartmeinhardt.moiree.MoireeImageMode;
+import de.lennartmeinhardt.moiree.PatternRaster;
+
+/**
+ * Measures generation of the random pattern at different densities, the only mode that depends on the density.
+ * 
+ * @author Lennart Meinhardt
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RandomDensityBenchmark {
+	
+	@Param({"100", "1000", "10000"})
+	public int size;
+	@Param({"1", "4", "16"})
+	public int pixelSize;
+	@Param({"1", "20", "50", "90"})
+	public double density;
+	
+	private ImageSettings settings;
+	
+	
+	@Setup public void setup() {
+		settings = Benchmarks.createSettings(MoireeImageMode.RANDOM, size, pixelSize, density);
+	}
+	
+	@Benchmark public PatternRaster createRaster() {
+		return MoireeImageMode.RANDOM.createRaster(settings);
+	}
+}